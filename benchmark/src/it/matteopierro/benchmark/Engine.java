@@ -0,0 +1,87 @@
+package it.matteopierro.benchmark;
+
+import it.matteopierro.computer.Computer;
+import it.matteopierro.computer.ComputerListener;
+import it.matteopierro.computer.Machine;
+import it.matteopierro.computer.ProgramImage;
+
+public enum Engine {
+    COMPUTER {
+        @Override
+        long run(String program, ProgramImage image, long[] inputs) {
+            String[] instructions = program.split(",");
+            BoundedListener listener = new BoundedListener(inputs);
+            try {
+                new Computer().execute(instructions, listener);
+            } catch (EndOfInput e) {
+                // the workload stops where its inputs run out
+            }
+            return listener.checksum;
+        }
+    },
+    MACHINE {
+        @Override
+        long run(String program, ProgramImage image, long[] inputs) {
+            return run(image.newMachine(), inputs);
+        }
+    },
+    FUSED {
+        @Override
+        long run(String program, ProgramImage image, long[] inputs) {
+            return run(image.newMachine().fused(), inputs);
+        }
+    },
+    TIERED {
+        @Override
+        long run(String program, ProgramImage image, long[] inputs) {
+            return run(image.newMachine().tiered(), inputs);
+        }
+    };
+
+    abstract long run(String program, ProgramImage image, long[] inputs);
+
+    static long run(Machine machine, long[] inputs) {
+        int next = 0;
+        long checksum = 0;
+        while (true) {
+            switch (machine.run()) {
+                case NEEDS_INPUT:
+                    if (next == inputs.length) return checksum;
+                    machine.addInput(inputs[next++]);
+                    break;
+                case OUTPUT:
+                    checksum += machine.output();
+                    break;
+                case HALTED:
+                    return checksum;
+            }
+        }
+    }
+
+    private static class BoundedListener extends ComputerListener {
+        private final long[] inputs;
+        private int next = 0;
+        private long checksum = 0;
+
+        BoundedListener(long[] inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        public String onReadRequested() {
+            if (next == inputs.length) throw new EndOfInput();
+            return String.valueOf(inputs[next++]);
+        }
+
+        @Override
+        public void onStoreRequested(String result) {
+            checksum += Long.parseLong(result);
+        }
+    }
+
+    private static class EndOfInput extends RuntimeException {
+        EndOfInput() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package it.matteopierro.benchmark;
+
+import it.matteopierro.computer.Machine;
+import it.matteopierro.computer.ProgramImage;
+import it.matteopierro.computer.Tracer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class IntcodeBenchmark {
+
+    @Param({"DAY2", "DAY5", "DAY9", "DAY13", "DAY19", "DAY21", "DAY23", "DAY25"})
+    public Workload workload;
+
+    @Param({"COMPUTER", "MACHINE", "FUSED", "TIERED"})
+    public Engine engine;
+
+    private String program;
+    private ProgramImage image;
+    private long[] inputs;
+    private long instructionsPerRun;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        program = workload.program();
+        image = ProgramImage.parse(program);
+        inputs = workload.inputs();
+        Tracer tracer = new Tracer(1);
+        Engine.run(image.newMachine().trace(tracer), inputs);
+        instructionsPerRun = tracer.recorded();
+    }
+
+    @Benchmark
+    public long execute(Instructions counter) {
+        counter.instructions += instructionsPerRun;
+        return engine.run(program, image, inputs);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            instructions = 0;
+        }
+    }
+}
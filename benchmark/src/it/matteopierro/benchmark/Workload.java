@@ -0,0 +1,52 @@
+package it.matteopierro.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+public enum Workload {
+    DAY2("input_day2") {
+        @Override
+        String program() throws IOException {
+            String[] instructions = super.program().split(",");
+            instructions[1] = "12";
+            instructions[2] = "2";
+            return String.join(",", instructions);
+        }
+    },
+    DAY5("input_day5", 5),
+    DAY9("input_day9", 2),
+    DAY13("input_day13"),
+    DAY19("input_day19", 17, 13),
+    DAY21("input_day21", ascii("OR A J", "AND B J", "AND C J", "NOT J J", "AND D J", "WALK")),
+    // a single NIC booting and polling an empty queue until the inputs run out
+    DAY23("input_day23", LongStream.concat(LongStream.of(0), LongStream.generate(() -> -1).limit(64)).toArray()),
+    // the text adventure up to its first prompt
+    DAY25("input_day25");
+
+    private final String input;
+    private final long[] inputs;
+
+    Workload(String input, long... inputs) {
+        this.input = input;
+        this.inputs = inputs;
+    }
+
+    String program() throws IOException {
+        return Files.readString(Paths.get("./" + input)).trim();
+    }
+
+    long[] inputs() {
+        return inputs.clone();
+    }
+
+    private static long[] ascii(String... lines) {
+        return Arrays.stream(lines)
+                .map(line -> line + "\n")
+                .flatMapToInt(String::chars)
+                .asLongStream()
+                .toArray();
+    }
+}
@@ -1,7 +1,8 @@
 package it.matteopierro;
 
-import it.matteopierro.computer.Computer;
-import it.matteopierro.computer.ComputerListener;
+import it.matteopierro.computer.LongRingBuffer;
+import it.matteopierro.computer.Pipeline;
+import it.matteopierro.computer.ProgramImage;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -11,10 +12,6 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import static java.util.Arrays.copyOf;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -85,26 +82,18 @@ class AmplificationCircuitTest {
     }
 
     private int calculateThrusterSignal(String program, int[] inputs) {
-        ChainableComputerListener fifthAmplifierListener = new ChainableComputerListener(inputs[4]);
-        ComputerListener fourthAmplifierListener = new ChainableComputerListener(inputs[3], fifthAmplifierListener);
-        ComputerListener thirdAmplifierListener = new ChainableComputerListener(inputs[2], fourthAmplifierListener);
-        ComputerListener secondAmplifierListener = new ChainableComputerListener(inputs[1], thirdAmplifierListener);
-        ComputerListener firstAmplifierListener = new ChainableComputerListener(inputs[0], secondAmplifierListener);
-        firstAmplifierListener.addInput("0");
-        fifthAmplifierListener.setListener(firstAmplifierListener);
-
-        ExecutorService executorService = Executors.newCachedThreadPool();
-        executorService.submit(() -> new Computer().execute(program, firstAmplifierListener));
-        executorService.submit(() -> new Computer().execute(program, secondAmplifierListener));
-        executorService.submit(() -> new Computer().execute(program, thirdAmplifierListener));
-        executorService.submit(() -> new Computer().execute(program, fourthAmplifierListener));
-        Future<Integer> fifthAmplifier = executorService.submit(() -> new Computer().execute(program, fifthAmplifierListener));
-
-        try {
-            return fifthAmplifier.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+        ProgramImage amplifier = ProgramImage.parse(program);
+        Pipeline.Builder circuit = Pipeline.builder(LongRingBuffer.WaitStrategy.PARK);
+        int firstAmplifier = circuit.add(amplifier.newMachine(), inputs[0], 0);
+        int lastAmplifier = firstAmplifier;
+        for (int i = 1; i < inputs.length; i++) {
+            int nextAmplifier = circuit.add(amplifier.newMachine(), inputs[i]);
+            circuit.connect(lastAmplifier, nextAmplifier);
+            lastAmplifier = nextAmplifier;
         }
+        circuit.connect(lastAmplifier, firstAmplifier);
+
+        return (int) circuit.build().run()[lastAmplifier];
     }
 
     private List<int[]> permutations(int[] inputs) {
@@ -133,27 +122,4 @@ class AmplificationCircuitTest {
         input[a] = input[b];
         input[b] = tmp;
     }
-
-    private static class ChainableComputerListener extends ComputerListener {
-        private ComputerListener listener;
-
-        public ChainableComputerListener(int input, ComputerListener listener) {
-            super(input);
-            this.listener = listener;
-        }
-
-        public ChainableComputerListener(int input) {
-            super(input);
-        }
-
-        @Override
-        public void onStoreRequested(String result) {
-            super.onStoreRequested(result);
-            listener.addInput(result);
-        }
-
-        public void setListener(ComputerListener listener) {
-            this.listener = listener;
-        }
-    }
 }
@@ -1,16 +1,15 @@
 package it.matteopierro;
 
-import it.matteopierro.computer.Computer;
-import it.matteopierro.computer.ComputerListener;
+import it.matteopierro.computer.Machine;
 import org.junit.jupiter.api.Test;
-import org.jooq.lambda.tuple.Tuple2;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.jooq.lambda.tuple.Tuple.tuple;
 
 class CarePackageTest {
 
@@ -18,7 +17,7 @@ class CarePackageTest {
     void firstPuzzle() throws IOException {
         ArcadeCabinet arcadeCabinet = new ArcadeCabinet();
         String program = Files.readString(Paths.get("./input_day13"));
-        new Computer().execute(program, arcadeCabinet);
+        Machine.of(program).execute(arcadeCabinet, arcadeCabinet);
 
         assertThat(arcadeCabinet.numberOfBlocks).isEqualTo(420);
     }
@@ -26,50 +25,43 @@ class CarePackageTest {
     @Test
     void secondPuzzle() throws IOException {
         ArcadeCabinet arcadeCabinet = new ArcadeCabinet();
-        String[] program = Files.readString(Paths.get("./input_day13")).split(",");
-        program[0] = "2";
-        new Computer().execute(program, arcadeCabinet);
+        Machine machine = Machine.of(Files.readString(Paths.get("./input_day13")));
+        machine.set(0, 2);
+        machine.execute(arcadeCabinet, arcadeCabinet);
 
         assertThat(arcadeCabinet.numberOfBlocks).isEqualTo(420);
         assertThat(arcadeCabinet.score).isEqualTo(420);
     }
 
-    private class ArcadeCabinet extends ComputerListener {
+    private class ArcadeCabinet implements LongSupplier, LongConsumer {
 
-        public static final String BLOCK_TILE = "2";
-        public static final String PADDLE_TILE = "3";
-        public static final String BALL_POSITION = "4";
+        public static final long BLOCK_TILE = 2;
+        public static final long PADDLE_TILE = 3;
+        public static final long BALL_POSITION = 4;
         private int instructionIndex = 0;
         private int numberOfBlocks;
-        private int currentX;
-        private int currentY;
-        private Tuple2<Integer, Integer> paddlePosition;
-        private Tuple2<Integer, Integer> ballPosition;
-        private String score;
+        private long currentX;
+        private long currentY;
+        private long paddleX;
+        private long ballX;
+        private long score;
 
         @Override
-        public String onReadRequested() {
-            if (ballPosition.v1 < paddlePosition.v1) {
-                return "-1";
-            }
-            if (ballPosition.v1 > paddlePosition.v1) {
-                return "1";
-            }
-            return "0";
+        public long getAsLong() {
+            return Long.compare(ballX, paddleX);
         }
 
         @Override
-        public void onStoreRequested(String result) {
-            super.onStoreRequested(result);
+        public void accept(long result) {
             if (instructionIndex == 2) {
-                if (BLOCK_TILE.equals(result)) {
+                if (BLOCK_TILE == result) {
                     numberOfBlocks++;
                 }
-                if (PADDLE_TILE.equals(result)) {
-                    paddlePosition = tuple(currentX, currentY);
+                if (PADDLE_TILE == result) {
+                    paddleX = currentX;
                 }
-                if (BALL_POSITION.equals(result)) {
-                    ballPosition = tuple(currentX, currentY);
+                if (BALL_POSITION == result) {
+                    ballX = currentX;
                 }
                 if (currentX == -1 && currentY == 0) {
                     score = result;
@@ -78,11 +70,11 @@ class CarePackageTest {
                 return;
             }
             if (instructionIndex == 0) {
-                currentX = Integer.parseInt(result);
+                currentX = result;
             }
 
             if (instructionIndex == 1) {
-                currentY = Integer.parseInt(result);
+                currentY = result;
             }
             instructionIndex++;
         }
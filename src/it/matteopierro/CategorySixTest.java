@@ -1,14 +1,18 @@
 package it.matteopierro;
 
-import it.matteopierro.computer.Computer;
+import it.matteopierro.computer.BlockingRuntime;
 import it.matteopierro.computer.ComputerListener;
-import org.jooq.lambda.Seq;
+import it.matteopierro.computer.ProgramImage;
+import it.matteopierro.computer.Scheduler;
+import it.matteopierro.network.PacketSwitch;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -82,54 +86,115 @@ class CategorySixTest {
 
     @Test
     void firstPuzzle() throws Exception {
-        String program = Files.readString(Paths.get("./input_day23"));
-        var result = new LinkedBlockingQueue<Packet>();
-        var sw = new Switch();
-        var nat = new Nat(result);
-        sw.attachNat(nat);
+        var network = new ScheduledNetwork(Files.readString(Paths.get("./input_day23")), true);
+        network.run();
+        assertThat(network.firstNatY).isEqualTo(26163L);
+    }
 
-        List<NetworkInterface> nics = Seq.range(0, 50)
-                .map(address -> {
-                    var nic = new NetworkInterface(address, sw);
-                    sw.attach(address, nic);
-                    return nic;
-                }).toList();
+    @Test
+    void secondPuzzle() throws Exception {
+        var network = new ScheduledNetwork(Files.readString(Paths.get("./input_day23")), false);
+        network.run();
+        assertThat(network.repeatedNatY).isEqualTo(18733L);
+    }
 
-        nics.forEach( nic -> {
-            new Thread(() -> new Computer().execute(program, nic)).start();
-        });
+    @Test
+    void firstPuzzleOnThePacketSwitch() throws Exception {
+        var nat = it.matteopierro.network.Nat.stopOnFirstPacket();
+        new PacketSwitch(ProgramImage.load(Paths.get("./input_day23")), 50, nat).run();
+        assertThat(nat.firstY()).isEqualTo(26163L);
+    }
 
-        Packet packet = result.take();
-        assertThat(packet.y).isEqualTo("26163");
+    @Test
+    void secondPuzzleOnThePacketSwitch() throws Exception {
+        var nat = new it.matteopierro.network.Nat();
+        new PacketSwitch(ProgramImage.load(Paths.get("./input_day23")), 50, nat).run();
+        assertThat(nat.repeatedY()).isEqualTo(18733L);
     }
 
     @Test
-    void secondPuzzle() throws Exception {
-        String program = Files.readString(Paths.get("./input_day23"));
+    void firstPuzzleWithBlockingListeners() throws Exception {
+        var image = ProgramImage.parse(Files.readString(Paths.get("./input_day23")));
+        var result = new LinkedBlockingQueue<Packet>();
         var sw = new Switch();
-        var nat = new Nat();
-        sw.attachNat(nat);
+        sw.attachNat(new Nat(result));
+        var nics = new ArrayList<NetworkInterface>();
+        for (int address = 0; address < 50; address++) {
+            var nic = new NetworkInterface(address, sw);
+            sw.attach(address, nic);
+            nics.add(nic);
+        }
+
+        var runtime = BlockingRuntime.virtual();
+        nics.forEach(nic -> runtime.start(image, nic));
+        Packet packet = result.take();
+        runtime.cancel();
+        runtime.join();
+
+        assertThat(packet.y).isEqualTo("26163");
+        assertThat(runtime.elapsedRunningNanos()).isPositive();
+        assertThat(runtime.tasks().stream().allMatch(task -> task.instructions() > 0)).isTrue();
+    }
+
+    private static class ScheduledNetwork {
+        private static final int NICS = 50;
+        private final Scheduler scheduler = new Scheduler(1_000);
+        private final long[][] outgoing = new long[NICS][3];
+        private final int[] outgoingSize = new int[NICS];
+        private final boolean stopAtFirstNatPacket;
+        private long natX;
+        private long natY;
+        private boolean natHasPacket = false;
+        private Long lastDeliveredY;
+        private Long firstNatY;
+        private Long repeatedNatY;
+
+        private ScheduledNetwork(String program, boolean stopAtFirstNatPacket) {
+            this.stopAtFirstNatPacket = stopAtFirstNatPacket;
+            ProgramImage image = ProgramImage.parse(program);
+            for (int address = 0; address < NICS; address++) {
+                int nic = scheduler.spawn(image.newMachine(), -1, this::onOutput);
+                scheduler.send(nic, address);
+            }
+        }
 
-        List<NetworkInterface> nics = Seq.range(0, 50)
-                .map(address -> {
-                    var nic = new NetworkInterface(address, sw);
-                    sw.attach(address, nic);
-                    return nic;
-                }).toList();
+        private void run() {
+            scheduler.run(this::onIdle);
+        }
 
-        nics.forEach( nic -> {
-            new Thread(() -> new Computer().execute(program, nic)).start();
-        });
+        private void onOutput(int nic, long value) {
+            long[] packet = outgoing[nic];
+            packet[outgoingSize[nic]++] = value;
+            if (outgoingSize[nic] < 3) return;
+            outgoingSize[nic] = 0;
+            if (packet[0] == 255) {
+                if (firstNatY == null) firstNatY = packet[2];
+                natX = packet[1];
+                natY = packet[2];
+                natHasPacket = true;
+                if (stopAtFirstNatPacket) scheduler.stop();
+            } else {
+                scheduler.send((int) packet[0], packet[1], packet[2]);
+            }
+        }
 
-        String y = nat.twoTimesSentY.take();
-        assertThat(y).isEqualTo("18733");
+        private void onIdle() {
+            if (!natHasPacket) return;
+            if (lastDeliveredY != null && lastDeliveredY == natY) {
+                repeatedNatY = natY;
+                scheduler.stop();
+                return;
+            }
+            lastDeliveredY = natY;
+            scheduler.send(0, natX, natY);
+        }
     }
 
     private static class NetworkInterface extends ComputerListener {
         private final String id;
         private String identifier;
         private final Switch sw;
-        private Queue<Packet> packetQueue = new LinkedList<>();
+        private Queue<Packet> packetQueue = new ConcurrentLinkedQueue<>();
         private List<String> currentPacketToSent = new ArrayList<>();
         private List<String> currentPacketToReceive = new ArrayList<>();
 
@@ -203,19 +268,26 @@ class CategorySixTest {
         private Map<String, NetworkInterface> nics = new HashMap<>();
         private Map<String, List<Packet>> buffers = new HashMap<>();
         private Map<String, Boolean> idles = new HashMap<>();
-
-        public synchronized void route(Packet packet) {
-            var address = packet.address;
-            if (address.equals("255")) {
-                nat.send(packet);
-                return;
-            }
-            if (nics.containsKey(address)) {
-                nics.get(address).addPacket(packet);
-            } else {
-                List<Packet> queue = buffers.getOrDefault(address, new ArrayList<>());
-                queue.add(packet);
-                buffers.put(address, queue);
+        // a lock rather than synchronized, so blocked virtual threads do not pin their carrier
+        private final ReentrantLock lock = new ReentrantLock();
+
+        public void route(Packet packet) {
+            lock.lock();
+            try {
+                var address = packet.address;
+                if (address.equals("255")) {
+                    nat.send(packet);
+                    return;
+                }
+                if (nics.containsKey(address)) {
+                    nics.get(address).addPacket(packet);
+                } else {
+                    List<Packet> queue = buffers.getOrDefault(address, new ArrayList<>());
+                    queue.add(packet);
+                    buffers.put(address, queue);
+                }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -231,22 +303,33 @@ class CategorySixTest {
             this.nat = nat;
         }
 
-        public synchronized void empty(String identifier) {
-            idles.put(identifier, true);
-            if (idles.entrySet().stream().allMatch(Map.Entry::getValue)) {
-                var nic = nics.get("0");
-                nat.sendPacketTo(nic);
+        public void empty(String identifier) {
+            lock.lock();
+            try {
+                idles.put(identifier, true);
+                if (idles.entrySet().stream().allMatch(Map.Entry::getValue)) {
+                    var nic = nics.get("0");
+                    nat.sendPacketTo(nic);
+                }
+            } finally {
+                lock.unlock();
             }
         }
 
         public void notEmpty(String identifier) {
-            idles.put(identifier, false);
+            lock.lock();
+            try {
+                idles.put(identifier, false);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     private static class Nat {
         private final LinkedBlockingQueue<Packet> firstReceivedPacket;
         private final LinkedBlockingQueue<String> twoTimesSentY = new LinkedBlockingQueue<>();
+        private final ReentrantLock lock = new ReentrantLock();
         private Packet lastReceivedPacket;
         private String lastY;
 
@@ -258,21 +341,31 @@ class CategorySixTest {
             this.firstReceivedPacket = firstReceivedPacket;
         }
 
-        public synchronized void send(Packet packet) {
-            this.firstReceivedPacket.add(packet);
-            this.lastReceivedPacket = packet;
+        public void send(Packet packet) {
+            lock.lock();
+            try {
+                this.firstReceivedPacket.add(packet);
+                this.lastReceivedPacket = packet;
+            } finally {
+                lock.unlock();
+            }
         }
 
-        public synchronized void sendPacketTo(NetworkInterface nic) {
-            if (lastReceivedPacket == null) {
-                return;
-            }
-            if (lastReceivedPacket.y.equals(lastY)) {
-                twoTimesSentY.add(lastY);
+        public void sendPacketTo(NetworkInterface nic) {
+            lock.lock();
+            try {
+                if (lastReceivedPacket == null) {
+                    return;
+                }
+                if (lastReceivedPacket.y.equals(lastY)) {
+                    twoTimesSentY.add(lastY);
+                }
+                lastY = lastReceivedPacket.y;
+                nic.addPacket(lastReceivedPacket);
+                lastReceivedPacket = null;
+            } finally {
+                lock.unlock();
             }
-            lastY = lastReceivedPacket.y;
-            nic.addPacket(lastReceivedPacket);
-            lastReceivedPacket = null;
         }
     }
 }
@@ -1,10 +1,8 @@
 package it.matteopierro;
 
-import it.matteopierro.computer.Computer;
-import it.matteopierro.computer.ComputerListener;
+import it.matteopierro.computer.Machine;
 import it.matteopierro.robot.Direction;
 import org.jgrapht.Graph;
-import org.jgrapht.GraphPath;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultUndirectedGraph;
@@ -14,10 +12,7 @@ import org.junit.jupiter.api.Test;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
-import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jooq.lambda.tuple.Tuple.tuple;
 
@@ -44,23 +39,31 @@ class OxygenSystemTest {
         assertThat(ship.longestPathFromOxygen()).isEqualTo(306);
     }
 
-    private static class Droid extends ComputerListener {
+    private static class Droid {
         private static final Tuple2<Integer, Integer> STARTING_POSITION = tuple(0, 0);
 
-        private final BlockingQueue<String> input = new LinkedBlockingQueue<>();
-        private final BlockingQueue<String> output = new LinkedBlockingQueue<>();
+        private final Machine machine;
         private Tuple2<Integer, Integer> location = STARTING_POSITION;
 
         public Droid(String program) {
-            new Thread(() -> {
-                var computer = new Computer();
-                computer.execute(program, Droid.this);
-            }).start();
+            this.machine = Machine.of(program);
         }
 
-        public State move(Direction direction) throws InterruptedException {
-            input.add(ordinal(direction));
-            var state = State.of(output.take());
+        private Droid(Machine machine, Tuple2<Integer, Integer> location) {
+            this.machine = machine;
+            this.location = location;
+        }
+
+        public Droid fork() {
+            return new Droid(machine.fork(), location);
+        }
+
+        public State move(Direction direction) {
+            machine.addInput(ordinal(direction));
+            if (machine.run() != Machine.State.OUTPUT) {
+                throw new IllegalStateException("The droid stopped answering");
+            }
+            var state = State.of(machine.output());
             if (state != State.WALL) {
                 location = direction.move(location);
             }
@@ -71,52 +74,30 @@ class OxygenSystemTest {
             return location;
         }
 
-        private static String ordinal(Direction direction) {
+        private static int ordinal(Direction direction) {
             switch (direction) {
-                case NORTH: return "1";
-                case SOUTH: return "2";
-                case WEST: return "3";
-                case EAST: return "4";
+                case NORTH: return 1;
+                case SOUTH: return 2;
+                case WEST: return 3;
+                case EAST: return 4;
             }
             throw new UnsupportedOperationException("Unknown direction: " + direction);
         }
-
-        @Override
-        public String onReadRequested() {
-            try {
-                return input.take();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        @Override
-        public void onStoreRequested(String result) {
-            super.onStoreRequested(result);
-            output.add(result);
-        }
     }
 
     private static class ShipState {
         private final Graph<Tuple2<Integer, Integer>, DefaultEdge> graph = new DefaultUndirectedGraph<>(DefaultEdge.class);
-        private final Stack<Tuple2<Integer, Integer>> tilesToVisit = new Stack<>();
+        private final Queue<Droid> droids = new LinkedList<>();
         private final Set<Tuple2<Integer, Integer>> tilesVisited = new HashSet<>();
-        private final Droid droid;
         private Tuple2<Integer, Integer> oxygen = null;
 
         ShipState(Droid droid) {
-            this.droid = droid;
             graph.addVertex(droid.getLocation());
-            tilesToVisit.addAll(adjacentPoints(droid.getLocation()));
+            tilesVisited.add(droid.getLocation());
+            droids.add(droid);
         }
 
-        private Set<Tuple2<Integer, Integer>> adjacentPoints(Tuple2<Integer, Integer> location) {
-            return Arrays.stream(Direction.values())
-                    .map( d -> d.move(location))
-                    .collect(toSet());
-        }
-
-        public int distanceToOxygen() throws InterruptedException {
+        public int distanceToOxygen() {
             if (oxygen == null) {
                 exploreShip();
             }
@@ -126,7 +107,7 @@ class OxygenSystemTest {
                     .getLength();
         }
 
-        public int longestPathFromOxygen() throws InterruptedException {
+        public int longestPathFromOxygen() {
             if (oxygen == null) {
                 exploreShip();
             }
@@ -138,71 +119,35 @@ class OxygenSystemTest {
                     .orElse(0);
         }
 
-        private synchronized void exploreShip() throws InterruptedException {
-            while (!tilesToVisit.isEmpty()) {
-                // Find the next point we need to explore
-                var tile = tilesToVisit.pop();
-
-                // Don't explore previously explored locations
-                if (!tilesVisited.add(tile)) {
-                    continue;
-                }
-
-                // Travel to our exploration point
-                State state = null;
-                Tuple2<Integer, Integer> previousLocation = null;
-                for (Direction direction : getDirections(tile)) {
-                    previousLocation = droid.getLocation();
-                    state = droid.move(direction);
-                }
-
-                if (state == State.WALL) {
-                    continue; // Node is not reachable
-                }
-
-                // Place the node into our graph
-                graph.addVertex(droid.getLocation());
-                graph.addEdge(droid.getLocation(), previousLocation);
-
-                // Mark the oxygen system if we've found it
-                if (state == State.OXYGEN_SYSTEM) {
-                    oxygen = droid.getLocation();
-                }
-
-                // Enqueue children
+        private synchronized void exploreShip() {
+            while (!droids.isEmpty()) {
+                var droid = droids.remove();
                 for (var direction : Direction.values()) {
-                    tilesToVisit.push(direction.move(droid.getLocation()));
-                }
-            }
-        }
-
-        private List<Direction> getDirections(Tuple2<Integer, Integer> tile) {
-            // If we're 1 move away, then just go there
-            for (var direction : Direction.values()) {
-                if (tile.equals(direction.move(droid.getLocation()))) {
-                    return List.of(direction);
+                    var tile = direction.move(droid.getLocation());
+
+                    // Explored tiles only need to be connected to this one
+                    if (!tilesVisited.add(tile)) {
+                        if (graph.containsVertex(tile)) {
+                            graph.addEdge(droid.getLocation(), tile);
+                        }
+                        continue;
+                    }
+
+                    // Branch a new droid at this junction instead of walking back here later
+                    var explorer = droid.fork();
+                    var state = explorer.move(direction);
+                    if (state == State.WALL) {
+                        continue;
+                    }
+
+                    graph.addVertex(tile);
+                    graph.addEdge(droid.getLocation(), tile);
+                    if (state == State.OXYGEN_SYSTEM) {
+                        oxygen = tile;
+                    }
+                    droids.add(explorer);
                 }
             }
-
-            // If we are more than 1 move away, then find the shortest path to get to any known-good square that's 1 square
-            // away, and then just make the last move.
-            var djikstra = new DijkstraShortestPath<>(graph).getPaths(droid.getLocation());
-            return Arrays.stream(Direction.values())
-                    .filter(direction -> graph.containsVertex(direction.move(tile)))
-                    .map(direction -> Optional.ofNullable(djikstra.getPath(direction.move(tile)))
-                            .map(GraphPath::getVertexList)
-                            .map(pointsInPath -> {
-                                var path = new ArrayList<Direction>();
-                                for (var i = 0; i < pointsInPath.size() - 1; i++) {
-                                    path.add(Direction.fromSegment(pointsInPath.get(i), pointsInPath.get(i + 1)));
-                                }
-                                path.add(direction.opposite());
-                                return path;
-                            })
-                            .orElse(null))
-                    .filter(Objects::nonNull)
-                    .min(Comparator.comparingInt(List::size))
-                    .orElseThrow(() -> new IllegalStateException(String.format("Couldn't find path to %s", tile)));
         }
     }
 
@@ -211,11 +156,11 @@ class OxygenSystemTest {
         EMPTY,
         OXYGEN_SYSTEM;
 
-        private static State of(String value) {
-            switch (value) {
-                case "0": return WALL;
-                case "1": return EMPTY;
-                case "2": return OXYGEN_SYSTEM;
+        private static State of(long value) {
+            switch ((int) value) {
+                case 0: return WALL;
+                case 1: return EMPTY;
+                case 2: return OXYGEN_SYSTEM;
             }
             throw new IllegalArgumentException("Unknown state value: " + value);
         }
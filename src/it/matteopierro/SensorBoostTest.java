@@ -63,4 +63,13 @@ class SensorBoostTest {
         List<String> results = new Computer().execute(program, "2");
         assertThat(results).containsExactly("59785");
     }
+
+    @Test
+    void addressBeyondTheIntRange() {
+        Computer computer = new Computer();
+
+        assertThat(computer.execute("1101,5,6,5000000000,4,5000000000,99")).containsExactly("11");
+        assertThat(computer.execute("109,4000000000,21101,5,6,1000000000,204,1000000000,99")).containsExactly("11");
+        assertThat(computer.execute("1105,1,4294967296,104,1,99")).isEmpty();
+    }
 }
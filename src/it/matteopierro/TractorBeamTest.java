@@ -1,44 +1,40 @@
 package it.matteopierro;
 
-import it.matteopierro.computer.Computer;
+import it.matteopierro.computer.ComputerFarm;
+import it.matteopierro.computer.ProgramImage;
+import it.matteopierro.computer.PureProgram;
 import org.jooq.lambda.Seq;
 import org.jooq.lambda.tuple.Tuple2;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jooq.lambda.tuple.Tuple.tuple;
 
 class TractorBeamTest {
 
-    private Computer computer;
-    private String program;
+    private ProgramImage program;
+    private PureProgram drone;
 
     @BeforeEach
     void setUp() throws IOException {
-        computer = new Computer();
-        program = Files.readString(Paths.get("./input_day19"));
+        program = ProgramImage.load(Paths.get("./input_day19"));
+        drone = new PureProgram(program, 100_000);
     }
 
     @Test
-    void firstPuzzle() throws IOException {
-        String program = Files.readString(Paths.get("./input_day19"));
-
-        List<Tuple2<Integer, Integer>> points = points();
-        Computer computer = new Computer();
-        long affectedPoints = 0;
-        for (Tuple2<Integer, Integer> point : points) {
-            List<String> results = computer.execute(program, String.valueOf(point.v1), String.valueOf(point.v2));
-            String result = results.get(results.size() - 1);
-            if (result.equals("1")) {
-                affectedPoints++;
-            }
-        }
+    void firstPuzzle() {
+        List<long[]> points = points().stream()
+                .map(point -> new long[]{point.v1, point.v2})
+                .collect(toList());
+        long affectedPoints = new ComputerFarm(program).run(points).stream()
+                .filter(result -> result[0] == 1)
+                .count();
         assertThat(affectedPoints).isEqualTo(-1L);
     }
 
@@ -76,6 +72,7 @@ class TractorBeamTest {
         assertThat(execute(leftDown.v1 + 99, leftDown.v2)).isEqualTo("1");
         assertThat(execute(leftDown.v1 + 99, leftDown.v2 - 99)).isEqualTo("1");
         assertThat(leftDown.v1 * 10000L + (leftDown.v2 - 99)).isEqualTo(6190948L);
+        assertThat(drone.hitRate()).isGreaterThan(0.0);
     }
 
     private Tuple2<Integer, Integer> findLeftDown(Tuple2<Integer, Integer> startingPoint) {
@@ -105,8 +102,7 @@ class TractorBeamTest {
     }
 
     private String execute(int x, int y) {
-        List<String> results = computer.execute(program, String.valueOf(x), String.valueOf(y));
-        return results.get(results.size() - 1);
+        return String.valueOf(drone.query(x, y));
     }
 
     private int firstBeam(int y) {
@@ -116,8 +112,7 @@ class TractorBeamTest {
 
     private int firstBeam(int y, int x) {
         while (true) {
-            List<String> results = computer.execute(program, String.valueOf(x), String.valueOf(y));
-            String result = results.get(results.size() - 1);
+            String result = execute(x, y);
             if (result.equals("1")) {
                 return x;
             }
@@ -136,9 +131,7 @@ class TractorBeamTest {
 
     private void println(int y, int maxX) {
         for (int x = 0; x < maxX; x++) {
-            List<String> results = computer.execute(program, String.valueOf(x), String.valueOf(y));
-            String result = results.get(results.size() - 1);
-            print(result);
+            print(execute(x, y));
         }
     }
 
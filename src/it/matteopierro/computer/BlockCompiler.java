@@ -0,0 +1,380 @@
+package it.matteopierro.computer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+class BlockCompiler {
+    private static final int MAX_INSTRUCTIONS = 64;
+    private static final int CLASS_VERSION = 49;
+    private static final String MACHINE = "it/matteopierro/computer/Machine";
+    private static final String BLOCK = "it/matteopierro/computer/CompiledBlock";
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int LCONST_0 = 0x09;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int LDC2_W = 0x14;
+    private static final int LADD = 0x61;
+    private static final int LMUL = 0x69;
+    private static final int IUSHR = 0x7c;
+    private static final int IAND = 0x7e;
+    private static final int IXOR = 0x82;
+    private static final int I2L = 0x85;
+    private static final int LCMP = 0x94;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int LRETURN = 0xad;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    // every block class dies with this loader, hidden classes would need JDK 15
+    private final BlockLoader loader = new BlockLoader();
+    private final AtomicInteger classes = new AtomicInteger();
+    // shared by all the machines of an image, a block is only reused while their code still matches it
+    private final ProgramImage image;
+    private final ConcurrentMap<Long, Block> compiled = new ConcurrentHashMap<>();
+
+    static final class Block {
+        final long start;
+        final long end;
+        final int instructions;
+        final CompiledBlock code;
+        // where each instruction of the block ends
+        private final long[] ends;
+        private final long[] words;
+
+        Block(long start, long[] ends, CompiledBlock code, long[] words) {
+            this.start = start;
+            this.end = ends[ends.length - 1];
+            this.instructions = ends.length;
+            this.code = code;
+            this.ends = ends;
+            this.words = words;
+        }
+
+        // a store into compiled code leaves the block right after the instruction that made it
+        int executedUntil(long address) {
+            for (int i = 0; i < ends.length; i++) {
+                if (ends[i] == address) return i + 1;
+            }
+            return instructions;
+        }
+
+        boolean matches(LongUnaryOperator memory) {
+            for (int i = 0; i < words.length; i++) {
+                if (memory.applyAsLong(start + i) != words[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    BlockCompiler(ProgramImage image) {
+        this.image = image;
+    }
+
+    ClassLoader loader() {
+        return loader;
+    }
+
+    int classes() {
+        return classes.get();
+    }
+
+    Block compile(Machine machine, long start, long programLength) {
+        Block cached = compiled.get(start);
+        if (cached != null && cached.matches(machine::get)) return cached;
+        Block block = translate(machine, start, programLength);
+        // a machine that rewrote its code keeps its block to itself
+        if (block != null && block.matches(address -> image.get((int) address))) compiled.putIfAbsent(start, block);
+        return block;
+    }
+
+    private Block translate(Machine machine, long start, long programLength) {
+        ConstantPool pool = new ConstantPool();
+        Code code = new Code(pool);
+        long address = start;
+        int instructions = 0;
+        long[] ends = new long[MAX_INSTRUCTIONS];
+        while (address < programLength && instructions < MAX_INSTRUCTIONS) {
+            long instruction = machine.get(address);
+            int modes = (int) (instruction / 100);
+            int operation = (int) (instruction % 100);
+            if (operation == 5 || operation == 6) {
+                code.read(machine.get(address + 1), modes % 10);
+                code.op(LCONST_0).op(LCMP);
+                int skip = code.branch(operation == 5 ? IFEQ : IFNE);
+                code.read(machine.get(address + 2), modes / 10 % 10);
+                code.op(LRETURN);
+                code.patch(skip);
+                address += 3;
+                code.returnAddress(address);
+                ends[instructions] = address;
+                // the jump closing the block runs too
+                return define(machine, start, Arrays.copyOf(ends, instructions + 1), code, pool);
+            }
+            if (operation == 9) {
+                code.op(ALOAD_0).op(ALOAD_1);
+                code.read(machine.get(address + 1), modes % 10);
+                code.invoke(pool.blockMethod("adjustRelativeBase", "(L" + MACHINE + ";J)V"));
+                address += 2;
+            } else if (operation >= 1 && operation <= 2 || operation == 7 || operation == 8) {
+                code.op(ALOAD_0).op(ALOAD_1);
+                code.address(machine.get(address + 3), modes / 100);
+                code.read(machine.get(address + 1), modes % 10);
+                code.read(machine.get(address + 2), modes / 10 % 10);
+                code.combine(operation);
+                code.invoke(pool.blockMethod("store", "(L" + MACHINE + ";JJ)Z"));
+                address += 4;
+                int next = code.branch(IFEQ);
+                code.returnAddress(address);
+                code.patch(next);
+            } else {
+                break;
+            }
+            ends[instructions++] = address;
+        }
+        if (instructions == 0) return null;
+        code.returnAddress(address);
+        return define(machine, start, Arrays.copyOf(ends, instructions), code, pool);
+    }
+
+    private Block define(Machine machine, long start, long[] ends, Code code, ConstantPool pool) {
+        try {
+            byte[] bytes = classFile(BLOCK + "$Block" + classes.incrementAndGet(), code, pool);
+            Class<?> blockClass = loader.define(bytes);
+            long[] words = new long[(int) (ends[ends.length - 1] - start)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = machine.get(start + i);
+            }
+            return new Block(start, ends, (CompiledBlock) blockClass.getDeclaredConstructor().newInstance(), words);
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new RuntimeException("Cannot compile block at " + start, e);
+        }
+    }
+
+    private byte[] classFile(String name, Code code, ConstantPool pool) throws IOException {
+        int thisClass = pool.classRef(name);
+        int superClass = pool.classRef(BLOCK);
+        int blockConstructor = pool.methodRef(BLOCK, "<init>", "()V");
+        int constructorName = pool.utf8("<init>");
+        int constructorDescriptor = pool.utf8("()V");
+        int executeName = pool.utf8("execute");
+        int executeDescriptor = pool.utf8("(L" + MACHINE + ";)J");
+        int codeAttribute = pool.utf8("Code");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        pool.writeTo(out);
+        out.writeShort(0x0031);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(2);
+
+        byte[] constructor = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (blockConstructor >> 8), (byte) blockConstructor, (byte) RETURN};
+        writeMethod(out, constructorName, constructorDescriptor, codeAttribute, 1, 1, constructor);
+        writeMethod(out, executeName, executeDescriptor, codeAttribute, 16, 2, code.toByteArray());
+
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static class BlockLoader extends ClassLoader {
+        BlockLoader() {
+            super(CompiledBlock.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+
+    private static class Code {
+        private final ConstantPool pool;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        void constant(long value) {
+            int index = pool.longConstant(value);
+            op(LDC2_W).op(index >> 8).op(index);
+        }
+
+        void invoke(int method) {
+            op(INVOKEVIRTUAL).op(method >> 8).op(method);
+        }
+
+        void relativeBase() {
+            op(ALOAD_1);
+            invoke(pool.machineMethod("relativeBase", "()J"));
+        }
+
+        void read(long parameter, int mode) {
+            if (mode == 1) {
+                constant(parameter);
+                return;
+            }
+            op(ALOAD_1);
+            address(parameter, mode);
+            invoke(pool.machineMethod("get", "(J)J"));
+        }
+
+        void address(long parameter, int mode) {
+            constant(parameter);
+            if (mode == 2) {
+                relativeBase();
+                op(LADD);
+            }
+        }
+
+        void combine(int operation) {
+            switch (operation) {
+                case 1:
+                    op(LADD);
+                    break;
+                case 2:
+                    op(LMUL);
+                    break;
+                case 7:
+                    op(LCMP).op(BIPUSH).op(31).op(IUSHR).op(I2L);
+                    break;
+                case 8:
+                    op(LCMP).op(ICONST_1).op(IAND).op(ICONST_1).op(IXOR).op(I2L);
+                    break;
+            }
+        }
+
+        void returnAddress(long address) {
+            constant(address);
+            op(LRETURN);
+        }
+
+        int branch(int opcode) {
+            int position = bytes.size();
+            op(opcode).op(0).op(0);
+            return position;
+        }
+
+        void patch(int branch) {
+            byte[] code = bytes.toByteArray();
+            int offset = code.length - branch;
+            code[branch + 1] = (byte) (offset >> 8);
+            code[branch + 2] = (byte) offset;
+            bytes.reset();
+            bytes.write(code, 0, code.length);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int size = 1;
+
+        int utf8(String value) {
+            return entry("U" + value, 1, () -> out.writeUTF(value));
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, 1, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int longConstant(long value) {
+            return entry("J" + value, 2, () -> {
+                out.writeByte(5);
+                out.writeLong(value);
+            });
+        }
+
+        int machineMethod(String name, String descriptor) {
+            return methodRef(MACHINE, name, descriptor);
+        }
+
+        int blockMethod(String name, String descriptor) {
+            return methodRef(BLOCK, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry("N" + name + descriptor, 1, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry("M" + owner + "." + name + descriptor, 1, () -> {
+                out.writeByte(10);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int entry(String key, int slots, Entry entry) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                if (key.startsWith("U")) out.writeByte(1);
+                entry.write();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            entries.put(key, size);
+            size += slots;
+            return size - slots;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(size);
+            target.write(bytes.toByteArray());
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package it.matteopierro.computer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class BlockingRuntime {
+    private static final long SLICE = 10_000;
+
+    private final ThreadFactory threads;
+    private final boolean virtual;
+    private final List<Task> tasks = new ArrayList<>();
+
+    private BlockingRuntime(ThreadFactory threads, boolean virtual) {
+        this.threads = threads;
+        this.virtual = virtual;
+    }
+
+    public static BlockingRuntime virtual() {
+        ThreadFactory factory = virtualThreadFactory();
+        return factory == null ? platform() : new BlockingRuntime(factory, true);
+    }
+
+    public static BlockingRuntime platform() {
+        return new BlockingRuntime(task -> {
+            Thread thread = new Thread(task, "intcode");
+            thread.setDaemon(true);
+            return thread;
+        }, false);
+    }
+
+    // looked up reflectively so the runtime still works on JDKs without virtual threads
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) return null;
+            throw new IllegalStateException("Cannot create virtual threads", e.getCause());
+        }
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    public Task start(ProgramImage image, ComputerListener listener) {
+        return start(image.newMachine(), listener);
+    }
+
+    public Task start(Machine machine, ComputerListener listener) {
+        Task task = new Task(machine, listener);
+        tasks.add(task);
+        task.thread = threads.newThread(task::run);
+        task.thread.start();
+        return task;
+    }
+
+    public void join() {
+        for (Task task : tasks) {
+            task.join();
+        }
+    }
+
+    public void cancel() {
+        for (Task task : tasks) {
+            task.cancel();
+        }
+    }
+
+    public List<Task> tasks() {
+        return new ArrayList<>(tasks);
+    }
+
+    public long elapsedRunningNanos() {
+        return tasks.stream().mapToLong(Task::elapsedRunningNanos).sum();
+    }
+
+    public long blockedNanos() {
+        return tasks.stream().mapToLong(Task::blockedNanos).sum();
+    }
+
+    public static class Task {
+        private final Machine machine;
+        private final ComputerListener listener;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // written by the task thread only, read by whoever reports on the runtime; wall-clock, not CPU time
+        private volatile long elapsedRunningNanos;
+        private volatile long blockedNanos;
+        private volatile RuntimeException failure;
+        private volatile boolean cancelled = false;
+        private volatile Thread thread;
+
+        private Task(Machine machine, ComputerListener listener) {
+            this.machine = machine;
+            this.listener = listener;
+        }
+
+        private void run() {
+            try {
+                execute();
+            } catch (RuntimeException e) {
+                // a listener woken up by cancel() ends the task quietly
+                if (!cancelled || !interrupted(e)) failure = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        // the machine runs in slices so a task that never reads or writes still sees cancel()
+        private void execute() {
+            while (!cancelled) {
+                long start = System.nanoTime();
+                Machine.State state = machine.run(SLICE);
+                long ran = System.nanoTime();
+                elapsedRunningNanos += ran - start;
+                switch (state) {
+                    case YIELDED:
+                        continue;
+                    case NEEDS_INPUT:
+                        machine.addInput(Long.parseLong(listener.onReadRequested()));
+                        break;
+                    case OUTPUT:
+                        listener.onStoreRequested(String.valueOf(machine.output()));
+                        break;
+                    default:
+                        return;
+                }
+                blockedNanos += System.nanoTime() - ran;
+            }
+        }
+
+        private static boolean interrupted(Throwable failure) {
+            for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InterruptedException) return true;
+            }
+            return false;
+        }
+
+        public void join() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            if (failure != null) throw new RuntimeException("Machine failed", failure);
+        }
+
+        public boolean join(long timeout, TimeUnit unit) throws InterruptedException {
+            boolean finished = done.await(timeout, unit);
+            if (finished && failure != null) throw new RuntimeException("Machine failed", failure);
+            return finished;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            thread.interrupt();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public Machine machine() {
+            return machine;
+        }
+
+        public long elapsedRunningNanos() {
+            return elapsedRunningNanos;
+        }
+
+        public long blockedNanos() {
+            return blockedNanos;
+        }
+
+        public long instructions() {
+            return machine.instructionsExecuted();
+        }
+    }
+}
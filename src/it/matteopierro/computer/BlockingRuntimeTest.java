@@ -0,0 +1,99 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlockingRuntimeTest {
+
+    private static final ProgramImage INCREMENT = ProgramImage.parse("3,9,1001,9,1,9,4,9,99,0");
+
+    @Test
+    void runEveryListenerOnItsOwnThread() {
+        BlockingRuntime runtime = BlockingRuntime.virtual();
+        List<ComputerListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ComputerListener listener = new ComputerListener(i);
+            listeners.add(listener);
+            runtime.start(INCREMENT, listener);
+        }
+
+        runtime.join();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(listeners.get(i).results()).containsExactly(String.valueOf(i + 1));
+        }
+        assertThat(runtime.tasks()).hasSize(1000);
+    }
+
+    @Test
+    void useVirtualThreadsWhenTheJdkHasThem() {
+        assertThat(BlockingRuntime.virtual().usesVirtualThreads()).isEqualTo(Runtime.version().feature() >= 21);
+        assertThat(BlockingRuntime.platform().usesVirtualThreads()).isFalse();
+    }
+
+    @Test
+    void reportTimeSpentBlockedOnTheListener() {
+        BlockingRuntime runtime = BlockingRuntime.virtual();
+        ComputerListener slowInput = new ComputerListener() {
+            @Override
+            public String onReadRequested() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "41";
+            }
+        };
+
+        BlockingRuntime.Task task = runtime.start(INCREMENT, slowInput);
+        task.join();
+
+        assertThat(slowInput.results()).containsExactly("42");
+        assertThat(task.blockedNanos()).isGreaterThanOrEqualTo(20_000_000L);
+        assertThat(task.elapsedRunningNanos()).isPositive();
+        assertThat(task.instructions()).isEqualTo(4L);
+    }
+
+    @Test
+    void rethrowFailuresOnJoin() {
+        BlockingRuntime runtime = BlockingRuntime.platform();
+        BlockingRuntime.Task task = runtime.start(ProgramImage.parse("42"), new ComputerListener());
+
+        assertThatThrownBy(task::join).isInstanceOf(RuntimeException.class).hasMessageContaining("Machine failed");
+    }
+
+    @Test
+    void cancelATaskBlockedOnInput() throws InterruptedException {
+        BlockingRuntime runtime = BlockingRuntime.virtual();
+        BlockingRuntime.Task task = runtime.start(INCREMENT, new ComputerListener());
+        Thread.sleep(20);
+
+        task.cancel();
+
+        assertThat(task.join(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(task.isCancelled()).isTrue();
+        assertThat(task.instructions()).isZero();
+    }
+
+    @Test
+    void cancelATaskThatNeverStopsComputing() throws InterruptedException {
+        BlockingRuntime runtime = BlockingRuntime.platform();
+        BlockingRuntime.Task task = runtime.start(ProgramImage.parse("1105,1,0"), new ComputerListener());
+        while (task.instructions() == 0) {
+            Thread.sleep(1);
+        }
+
+        task.cancel();
+
+        assertThat(task.join(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(task.isCancelled()).isTrue();
+        assertThat(task.instructions()).isPositive();
+    }
+}
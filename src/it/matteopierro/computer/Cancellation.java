@@ -0,0 +1,14 @@
+package it.matteopierro.computer;
+
+// handed to one run through RunLimits, so a cancel() that comes before the run starts still stops it
+public final class Cancellation {
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,259 @@
+package it.matteopierro.computer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class Checkpointer {
+    // "CKPT"
+    private static final int MAGIC = 0x434B5054;
+    private static final int VERSION = 1;
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+
+    private final Machine machine;
+    private final Path file;
+    // the memory epoch is advanced on every save, so its dirty pages are exactly the ones to append
+    private boolean saved = false;
+    private int lastPagesWritten = 0;
+
+    public Checkpointer(Machine machine, Path file) {
+        this.machine = machine;
+        this.file = file;
+    }
+
+    public static Checkpointer resume(ProgramImage image, Path file) throws IOException {
+        Replay replay = replay(image, file);
+        // drop a record torn by a crash, otherwise the next delta would be appended after it
+        if (Files.size(file) > replay.end) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(replay.end);
+            }
+        }
+        Checkpointer checkpointer = new Checkpointer(replay.machine, file);
+        checkpointer.machine.memory().newEpoch();
+        checkpointer.saved = true;
+        return checkpointer;
+    }
+
+    public static Machine restore(ProgramImage image, Path file) throws IOException {
+        return replay(image, file).machine;
+    }
+
+    private static Replay replay(ProgramImage image, Path file) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try (DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a checkpoint: " + file);
+            if (in.readInt() != VERSION) throw new IOException("Unsupported checkpoint version in " + file);
+            if (in.readInt() != image.length() || in.readLong() != fingerprint(image)) {
+                throw new IllegalArgumentException("Checkpoint was taken from another program");
+            }
+            PagedMemory memory = new PagedMemory();
+            Record last = null;
+            long end = counter.count;
+            for (Record record = Record.read(in); record != null; record = Record.read(in)) {
+                record.applyTo(memory);
+                last = record;
+                end = counter.count;
+            }
+            if (last == null) throw new IOException("No complete checkpoint in " + file);
+            Machine machine = Machine.restored(image, memory, last.instructionPointer, last.relativeBase, last.inputs, last.output);
+            return new Replay(machine, end);
+        }
+    }
+
+    public void save() throws IOException {
+        // the first save rewrites the file, so it must not clobber the previous checkpoint in place
+        if (!saved) {
+            compact();
+            return;
+        }
+        List<Long> pageNumbers = new ArrayList<>();
+        List<long[]> pages = new ArrayList<>();
+        machine.memory().forEachDirtyPage((pageNumber, page) -> {
+            pageNumbers.add(pageNumber);
+            pages.add(page);
+        });
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            writeRecord(out, DELTA, pageNumbers, pages);
+        }
+        machine.memory().newEpoch();
+        lastPagesWritten = pages.size();
+    }
+
+    public void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        List<Long> pageNumbers = new ArrayList<>();
+        List<long[]> pages = new ArrayList<>();
+        machine.memory().forEachPage((pageNumber, page) -> {
+            pageNumbers.add(pageNumber);
+            pages.add(page);
+        });
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            writeHeader(out);
+            writeRecord(out, FULL, pageNumbers, pages);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        machine.memory().newEpoch();
+        saved = true;
+        lastPagesWritten = pages.size();
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        ProgramImage image = machine.image();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(image.length());
+        out.writeLong(fingerprint(image));
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, List<Long> pageNumbers, List<long[]> pages) throws IOException {
+        out.writeByte(type);
+        out.writeLong(machine.instructionPointer());
+        out.writeLong(machine.relativeBase());
+        out.writeLong(machine.output());
+        long[] inputs = machine.pendingInputs();
+        out.writeInt(inputs.length);
+        for (long input : inputs) {
+            out.writeLong(input);
+        }
+        out.writeInt(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            long[] page = pages.get(i);
+            // trailing zeros are implied, most pages are only partly used
+            int used = page.length;
+            while (used > 0 && page[used - 1] == 0) used--;
+            out.writeLong(pageNumbers.get(i));
+            out.writeShort(used);
+            for (int word = 0; word < used; word++) {
+                out.writeLong(page[word]);
+            }
+        }
+    }
+
+    private static long fingerprint(ProgramImage image) {
+        long hash = 1;
+        for (int address = 0; address < image.length(); address++) {
+            hash = hash * 0x9E3779B97F4A7C15L + image.get(address);
+        }
+        return hash;
+    }
+
+    public Machine machine() {
+        return machine;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int lastPagesWritten() {
+        return lastPagesWritten;
+    }
+
+    private static final class Replay {
+        private final Machine machine;
+        // the offset right after the last complete record
+        private final long end;
+
+        private Replay(Machine machine, long end) {
+            this.machine = machine;
+            this.end = end;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) count++;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long bytes) throws IOException {
+            long skipped = super.skip(bytes);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class Record {
+        private final long instructionPointer;
+        private final long relativeBase;
+        private final long output;
+        private final long[] inputs;
+        private final long[] pageNumbers;
+        private final long[][] pages;
+
+        private Record(long instructionPointer, long relativeBase, long output, long[] inputs, long[] pageNumbers, long[][] pages) {
+            this.instructionPointer = instructionPointer;
+            this.relativeBase = relativeBase;
+            this.output = output;
+            this.inputs = inputs;
+            this.pageNumbers = pageNumbers;
+            this.pages = pages;
+        }
+
+        // a record cut short by a crash during save is ignored, so the previous one wins
+        static Record read(DataInputStream in) throws IOException {
+            try {
+                int type = in.read();
+                if (type < 0) return null;
+                if (type != FULL && type != DELTA) throw new IOException("Corrupted checkpoint record " + type);
+                long instructionPointer = in.readLong();
+                long relativeBase = in.readLong();
+                long output = in.readLong();
+                long[] inputs = new long[in.readInt()];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = in.readLong();
+                }
+                int count = in.readInt();
+                long[] pageNumbers = new long[count];
+                long[][] pages = new long[count][PagedMemory.PAGE_SIZE];
+                for (int i = 0; i < count; i++) {
+                    pageNumbers[i] = in.readLong();
+                    int used = in.readUnsignedShort();
+                    for (int word = 0; word < used; word++) {
+                        pages[i][word] = in.readLong();
+                    }
+                }
+                return new Record(instructionPointer, relativeBase, output, inputs, pageNumbers, pages);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        void applyTo(PagedMemory memory) {
+            for (int i = 0; i < pages.length; i++) {
+                memory.writePage(pageNumbers[i], pages[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CheckpointerTest {
+
+    private static final String INCREMENT = "3,9,1001,9,1,9,4,9,99,0";
+
+    @Test
+    void resumeWhereTheMachineStopped() throws IOException {
+        Machine machine = Machine.of(INCREMENT);
+        assertThat(machine.run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        Path file = temporaryFile();
+        new Checkpointer(machine, file).save();
+
+        Machine restored = Checkpointer.restore(ProgramImage.parse(INCREMENT), file);
+        restored.addInput(41);
+
+        assertThat(restored.instructionPointer()).isEqualTo(0L);
+        assertThat(restored.run()).isEqualTo(Machine.State.OUTPUT);
+        assertThat(restored.output()).isEqualTo(42L);
+    }
+
+    @Test
+    void keepPendingInputsAndTheLastOutput() throws IOException {
+        Machine machine = Machine.of("104,7,3,11,3,12,99,0,0,0,0,0,0");
+        assertThat(machine.run()).isEqualTo(Machine.State.OUTPUT);
+        machine.addInput(5);
+        Path file = temporaryFile();
+        new Checkpointer(machine, file).save();
+
+        Machine restored = Checkpointer.restore(ProgramImage.parse("104,7,3,11,3,12,99,0,0,0,0,0,0"), file);
+
+        assertThat(restored.output()).isEqualTo(7L);
+        assertThat(restored.run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        assertThat(restored.get(11)).isEqualTo(5L);
+    }
+
+    @Test
+    void writeOnlyThePagesChangedSinceTheLastSave() throws IOException {
+        Machine machine = Machine.of(INCREMENT);
+        for (int page = 1; page <= 10; page++) {
+            machine.set(page * (long) PagedMemory.PAGE_SIZE, page);
+        }
+        Path file = temporaryFile();
+        Checkpointer checkpointer = new Checkpointer(machine, file);
+        checkpointer.save();
+        assertThat(checkpointer.lastPagesWritten()).isEqualTo(11);
+        long fullSize = Files.size(file);
+
+        machine.set(3L * PagedMemory.PAGE_SIZE + 1, 33);
+        checkpointer.save();
+        checkpointer.save();
+
+        assertThat(checkpointer.lastPagesWritten()).isEqualTo(0);
+        Machine restored = Checkpointer.restore(ProgramImage.parse(INCREMENT), file);
+        assertThat(restored.get(3L * PagedMemory.PAGE_SIZE + 1)).isEqualTo(33L);
+        assertThat(restored.get(10L * PagedMemory.PAGE_SIZE)).isEqualTo(10L);
+        assertThat(Files.size(file) - fullSize).isLessThan(100L);
+
+        checkpointer.compact();
+        assertThat(Checkpointer.restore(ProgramImage.parse(INCREMENT), file).get(3L * PagedMemory.PAGE_SIZE + 1)).isEqualTo(33L);
+    }
+
+    @Test
+    void ignoreARecordCutShortByACrash() throws IOException {
+        Machine machine = Machine.of(INCREMENT);
+        Path file = temporaryFile();
+        Checkpointer checkpointer = new Checkpointer(machine, file);
+        checkpointer.save();
+        machine.set(9, 99);
+        checkpointer.save();
+        Files.write(file, new byte[]{2, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        assertThat(Checkpointer.restore(ProgramImage.parse(INCREMENT), file).get(9)).isEqualTo(99L);
+    }
+
+    @Test
+    void keepSavingAfterResumingFromATornCheckpoint() throws IOException {
+        Machine machine = Machine.of(INCREMENT);
+        Path file = temporaryFile();
+        Checkpointer checkpointer = new Checkpointer(machine, file);
+        checkpointer.save();
+        machine.set(9, 99);
+        checkpointer.save();
+        long complete = Files.size(file);
+        Files.write(file, new byte[]{2, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        Checkpointer resumed = Checkpointer.resume(ProgramImage.parse(INCREMENT), file);
+        assertThat(Files.size(file)).isEqualTo(complete);
+        resumed.machine().set(9, 100);
+        resumed.save();
+
+        assertThat(Checkpointer.restore(ProgramImage.parse(INCREMENT), file).get(9)).isEqualTo(100L);
+    }
+
+    @Test
+    void replaceThePreviousCheckpointOnTheFirstSave() throws IOException {
+        Path file = temporaryFile();
+        Machine first = Machine.of(INCREMENT);
+        first.set(9, 1);
+        new Checkpointer(first, file).save();
+        Machine second = Machine.of(INCREMENT);
+        second.set(9, 2);
+
+        new Checkpointer(second, file).save();
+
+        assertThat(Checkpointer.restore(ProgramImage.parse(INCREMENT), file).get(9)).isEqualTo(2L);
+        assertThat(Files.exists(file.resolveSibling(file.getFileName() + ".tmp"))).isFalse();
+    }
+
+    @Test
+    void refuseCheckpointsOfAnotherProgram() throws IOException {
+        Path file = temporaryFile();
+        new Checkpointer(Machine.of(INCREMENT), file).save();
+
+        assertThatThrownBy(() -> Checkpointer.restore(ProgramImage.parse("104,1,99"), file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("another program");
+    }
+
+    @Test
+    void resumeTheAdventureAfterARestart() throws IOException {
+        ProgramImage adventure = ProgramImage.load(Paths.get("./input_day25"));
+        Machine machine = adventure.newMachine();
+        Path file = temporaryFile();
+        Checkpointer checkpointer = new Checkpointer(machine, file);
+        while (machine.run() != Machine.State.NEEDS_INPUT) {
+        }
+        checkpointer.save();
+
+        Machine resumed = Checkpointer.resume(adventure, file).machine();
+
+        assertThat(command(resumed, "north\n")).isEqualTo(command(machine, "north\n"));
+    }
+
+    private static String command(Machine machine, String command) {
+        command.chars().forEach(machine::addInput);
+        StringBuilder output = new StringBuilder();
+        while (machine.run() == Machine.State.OUTPUT) {
+            output.append((char) machine.output());
+        }
+        return output.toString();
+    }
+
+    private static Path temporaryFile() throws IOException {
+        Path file = Files.createTempFile("machine", ".checkpoint");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
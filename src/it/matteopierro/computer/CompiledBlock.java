@@ -0,0 +1,18 @@
+package it.matteopierro.computer;
+
+// blocks are defined by a class loader of their own so they are unloaded with their machine,
+// which puts them in another runtime package: they can only reach the machine through these protected bridges
+public abstract class CompiledBlock {
+    protected CompiledBlock() {
+    }
+
+    protected abstract long execute(Machine machine);
+
+    protected final boolean store(Machine machine, long address, long value) {
+        return machine.store(address, value);
+    }
+
+    protected final void adjustRelativeBase(Machine machine, long offset) {
+        machine.adjustRelativeBase(offset);
+    }
+}
@@ -33,9 +33,13 @@ public class Computer {
     }
 
     public List<String> execute(String[] instructions, ComputerListener listener, Memory memory) {
+        memory.decodeFor(listener);
         for (int instructionIndex = 0; instructionIndex < instructions.length; ) {
-            String operationCode = instructions[instructionIndex];
-            Operation operation = operationFor(operationCode, listener);
+            Operation operation = memory.decodedOperation(instructionIndex);
+            if (operation == null) {
+                operation = operationFor(instructions[instructionIndex], listener);
+                memory.cacheDecodedOperation(instructionIndex, operation);
+            }
             instructionIndex = operation.execute(memory, instructionIndex);
         }
         return listener.results();
@@ -78,7 +82,7 @@ public class Computer {
         Long read(Memory memory, Integer address);
 
         default void write(Memory memory, Integer address, String value) {
-            int position = Integer.parseInt(memory.get(address));
+            long position = Long.parseLong(memory.get(address));
             memory.set(position, String.valueOf(value));
         }
     }
@@ -86,7 +90,7 @@ public class Computer {
     private static class Position implements Mode {
         @Override
         public Long read(Memory memory, Integer address) {
-            int position = Integer.parseInt(memory.get(address));
+            long position = Long.parseLong(memory.get(address));
             return Long.parseLong(memory.get(position));
         }
     }
@@ -102,18 +106,18 @@ public class Computer {
 
         @Override
         public Long read(Memory memory, Integer address) {
-            int offset = Integer.parseInt(memory.get(address));
+            long offset = Long.parseLong(memory.get(address));
             return Long.parseLong(memory.getRelative(offset));
         }
 
         @Override
         public void write(Memory memory, Integer address, String value) {
-            int offset = Integer.parseInt(memory.get(address));
+            long offset = Long.parseLong(memory.get(address));
             memory.setRelative(offset, String.valueOf(value));
         }
     }
 
-    private interface Operation {
+    interface Operation {
         int execute(Memory memory, int memoryIndex);
     }
 
@@ -263,7 +267,8 @@ public class Computer {
 
         @Override
         protected int execute(Memory memory, int memoryIndex, long firstOperand, long secondOperand) {
-            if (jumpCondition(firstOperand)) return (int) secondOperand;
+            // jumping past the program halts it, like Machine does, instead of wrapping the target into an int
+            if (jumpCondition(firstOperand)) return (int) Math.min(secondOperand, memory.instructionLength());
 
             return memoryIndex + 3;
         }
@@ -0,0 +1,86 @@
+package it.matteopierro.computer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ComputerFarm {
+    private final ProgramImage image;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+
+    public ComputerFarm(ProgramImage image) {
+        this(image, ForkJoinPool.commonPool());
+    }
+
+    public ComputerFarm(ProgramImage image, ForkJoinPool pool) {
+        this.image = image;
+        this.pool = pool;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(image));
+    }
+
+    public List<long[]> run(Stream<long[]> inputs) {
+        return run(inputs.collect(Collectors.toList()));
+    }
+
+    public List<long[]> run(List<long[]> inputs) {
+        Machine.Snapshot warmStart = image.warmStart();
+        return map(inputs, machine -> machine.restore(warmStart), (machine, input) -> workers.get().execute(input));
+    }
+
+    public <T, R> List<R> map(List<T> queries, BiFunction<Machine, T, R> query) {
+        return map(queries, Machine::reset, query);
+    }
+
+    private <T, R> List<R> map(List<T> queries, Consumer<Machine> start, BiFunction<Machine, T, R> query) {
+        Object[] results = new Object[queries.size()];
+        pool.submit(() -> IntStream.range(0, queries.size())
+                .parallel()
+                .forEach(i -> {
+                    Machine machine = workers.get().machine;
+                    start.accept(machine);
+                    results[i] = query.apply(machine, queries.get(i));
+                }))
+                .join();
+        @SuppressWarnings("unchecked")
+        List<R> mapped = (List<R>) Arrays.asList(results);
+        return mapped;
+    }
+
+    public ProgramImage image() {
+        return image;
+    }
+
+    private static class Worker {
+        private final Machine machine;
+        private long[] outputs = new long[16];
+
+        Worker(ProgramImage image) {
+            this.machine = image.newMachine();
+        }
+
+        long[] execute(long[] input) {
+            for (long value : input) {
+                machine.addInput(value);
+            }
+            int count = 0;
+            while (true) {
+                switch (machine.run()) {
+                    case OUTPUT:
+                        if (count == outputs.length) outputs = Arrays.copyOf(outputs, count * 2);
+                        outputs[count++] = machine.output();
+                        break;
+                    case NEEDS_INPUT:
+                        throw new IllegalStateException("Program asked for more than " + input.length + " inputs");
+                    case HALTED:
+                        return Arrays.copyOf(outputs, count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ComputerFarmTest {
+
+    @Test
+    void returnOutputsInInputOrder() {
+        ComputerFarm farm = new ComputerFarm(ProgramImage.parse("3,11,3,12,1,11,12,13,4,13,99,0,0,0"));
+        List<long[]> inputs = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            inputs.add(new long[]{i, i * 2});
+        }
+
+        List<long[]> outputs = farm.run(inputs);
+
+        assertThat(outputs).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(outputs.get(i)).containsExactly(3L * i);
+        }
+    }
+
+    @Test
+    void scanTheTractorBeam() throws IOException {
+        ComputerFarm farm = new ComputerFarm(ProgramImage.load(Paths.get("./input_day19")));
+        List<long[]> points = new ArrayList<>();
+        for (long x = 0; x < 50; x++) {
+            for (long y = 0; y < 50; y++) {
+                points.add(new long[]{x, y});
+            }
+        }
+
+        long affectedPoints = farm.run(points).stream()
+                .filter(result -> result[0] == 1)
+                .count();
+
+        assertThat(affectedPoints).isEqualTo(206L);
+    }
+
+    @Test
+    void searchNounAndVerb() throws IOException {
+        ComputerFarm farm = new ComputerFarm(ProgramImage.load(Paths.get("./input_day2")));
+        List<int[]> nounsAndVerbs = new ArrayList<>();
+        for (int noun = 0; noun < 100; noun++) {
+            for (int verb = 0; verb < 100; verb++) {
+                nounsAndVerbs.add(new int[]{noun, verb});
+            }
+        }
+
+        List<Long> results = farm.map(nounsAndVerbs, (machine, nounAndVerb) -> {
+            machine.set(1, nounAndVerb[0]);
+            machine.set(2, nounAndVerb[1]);
+            machine.run();
+            return machine.get(0);
+        });
+
+        assertThat(results.get(12 * 100 + 2)).isEqualTo(4945026L);
+        assertThat(results.indexOf(19690720L)).isEqualTo(5296);
+    }
+}
@@ -1,6 +1,6 @@
 package it.matteopierro.computer;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -10,7 +10,7 @@ import static java.util.Arrays.asList;
 public class ComputerListener {
 
     private final BlockingQueue<String> inputs;
-    private final List<String> results = new LinkedList<>();
+    private final List<String> results = new ArrayList<>();
 
     public ComputerListener(Integer... inputs) {
         this.inputs = new LinkedBlockingQueue<>();
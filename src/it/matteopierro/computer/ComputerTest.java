@@ -0,0 +1,33 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ComputerTest {
+
+    private static final String SELF_MODIFYING_PROGRAM = "4,17,1006,18,16,1101,104,0,0,1101,0,0,18,1105,1,0,99,42,1";
+
+    @Test
+    void decodeRewrittenInstructionsAgain() {
+        List<String> results = new Computer().execute(SELF_MODIFYING_PROGRAM);
+
+        assertThat(results).containsExactly("42", "17");
+    }
+
+    @Test
+    void reuseDecodedInstructionsWithinALoop() {
+        String program = "1001,10,-1,10,1005,10,0,104,7,99,3";
+        String[] instructions = program.split(",");
+        Memory memory = new Memory(instructions);
+
+        List<String> results = new Computer().execute(instructions, new ComputerListener(), memory);
+
+        assertThat(results).containsExactly("7");
+        assertThat(memory.get(10)).isEqualTo("0");
+        assertThat(memory.decodes(0)).isEqualTo(1);
+        assertThat(memory.decodes(4)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,431 @@
+package it.matteopierro.computer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public final class ControlFlowGraph {
+    private static final int POSITION_MODE = 0;
+    private static final int IMMEDIATE_MODE = 1;
+    private static final int RELATIVE_MODE = 2;
+    private static final String[] MNEMONICS = {null, "add", "mul", "in", "out", "jnz", "jz", "lt", "eq", "arb"};
+
+    private final ProgramImage image;
+    private final BitSet code = new BitSet();
+    private final BitSet starts = new BitSet();
+    private final BitSet leaders = new BitSet();
+    private final BitSet writtenCode = new BitSet();
+    private final TreeSet<Integer> indirectTargets = new TreeSet<>();
+    private final TreeMap<Integer, Block> blocks = new TreeMap<>();
+    private final TreeMap<Integer, Region> dataRegions = new TreeMap<>();
+    private boolean indirectJumps = false;
+    private boolean unknownWrites = false;
+
+    private ControlFlowGraph(ProgramImage image) {
+        this.image = image;
+    }
+
+    public static ControlFlowGraph of(ProgramImage image) {
+        ControlFlowGraph graph = new ControlFlowGraph(image);
+        graph.disassemble();
+        graph.findSelfModifyingWrites();
+        graph.buildBlocks();
+        graph.findDataRegions();
+        return graph;
+    }
+
+    // blocks stored in a binary image skip the disassembly, only the per-block facts are derived again
+    static ControlFlowGraph of(ImageFile file) {
+        ControlFlowGraph graph = new ControlFlowGraph(file.image());
+        graph.loadBlocks(file);
+        graph.findSelfModifyingWrites();
+        graph.linkBlocks();
+        graph.findDataRegions();
+        return graph;
+    }
+
+    static int length(long instruction) {
+        if (instruction <= 0 || instruction > 22299) return 0;
+        int modes = (int) (instruction / 100);
+        for (int mode = modes; mode > 0; mode /= 10) {
+            if (mode % 10 > RELATIVE_MODE) return 0;
+        }
+        switch ((int) (instruction % 100)) {
+            case 1:
+            case 2:
+            case 7:
+            case 8:
+                return modes / 100 == IMMEDIATE_MODE ? 0 : 4;
+            case 3:
+                return modes % 10 == IMMEDIATE_MODE ? 0 : 2;
+            case 4:
+            case 9:
+                return 2;
+            case 5:
+            case 6:
+                return 3;
+            case 99:
+                return modes == 0 ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private void disassemble() {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(0);
+        leaders.set(0);
+        while (true) {
+            while (!pending.isEmpty()) {
+                follow(pending.pop(), pending);
+            }
+            if (!indirectJumps) return;
+            for (int target : candidateTargets()) {
+                if (!code.get(target) && fits(target)) {
+                    indirectTargets.add(target);
+                    leaders.set(target);
+                    pending.push(target);
+                }
+            }
+            if (pending.isEmpty()) return;
+        }
+    }
+
+    private void follow(int address, Deque<Integer> pending) {
+        while (address < image.length() && !code.get(address) && fits(address)) {
+            long instruction = image.get(address);
+            int length = length(instruction);
+            starts.set(address);
+            code.set(address, address + length);
+            int operation = (int) (instruction % 100);
+            int next = address + length;
+            if (operation == 99) return;
+            if (operation == 5 || operation == 6) {
+                leaders.set(next);
+                int modes = (int) (instruction / 100);
+                long condition = image.get(address + 1);
+                boolean constant = modes % 10 == IMMEDIATE_MODE;
+                boolean taken = (condition != 0) == (operation == 5);
+                if (!constant || taken) {
+                    if (modes / 10 % 10 == IMMEDIATE_MODE) {
+                        long target = image.get(address + 2);
+                        if (target >= 0 && target < image.length()) {
+                            leaders.set((int) target);
+                            pending.push((int) target);
+                        }
+                    } else {
+                        indirectJumps = true;
+                    }
+                }
+                if (constant && taken) return;
+            }
+            address = next;
+        }
+    }
+
+    private boolean fits(int address) {
+        int length = length(image.get(address));
+        return length > 0 && address + length <= image.length();
+    }
+
+    private Collection<Integer> candidateTargets() {
+        TreeSet<Integer> candidates = new TreeSet<>();
+        for (int address = starts.nextSetBit(0); address >= 0; address = starts.nextSetBit(address + 1)) {
+            long instruction = image.get(address);
+            int operation = (int) (instruction % 100);
+            if (operation != 1 && operation != 2) continue;
+            int modes = (int) (instruction / 100);
+            addCandidate(candidates, modes % 10, image.get(address + 1));
+            addCandidate(candidates, modes / 10 % 10, image.get(address + 2));
+        }
+        return candidates;
+    }
+
+    private void addCandidate(Collection<Integer> candidates, int mode, long value) {
+        if (mode == IMMEDIATE_MODE && value > 0 && value < image.length()) {
+            candidates.add((int) value);
+        }
+    }
+
+    // a relative-mode write, or a write whose address the program rewrites, may land anywhere
+    private void findSelfModifyingWrites() {
+        BitSet targetOperands = new BitSet();
+        for (int address = starts.nextSetBit(0); address >= 0; address = starts.nextSetBit(address + 1)) {
+            long instruction = image.get(address);
+            int modes = (int) (instruction / 100);
+            int mode;
+            int operand;
+            switch ((int) (instruction % 100)) {
+                case 1:
+                case 2:
+                case 7:
+                case 8:
+                    mode = modes / 100;
+                    operand = address + 3;
+                    break;
+                case 3:
+                    mode = modes % 10;
+                    operand = address + 1;
+                    break;
+                default:
+                    continue;
+            }
+            if (mode == RELATIVE_MODE) {
+                unknownWrites = true;
+                continue;
+            }
+            targetOperands.set(operand);
+            long target = image.get(operand);
+            if (target >= 0 && target < image.length() && code.get((int) target)) {
+                writtenCode.set((int) target);
+                int written = starts.previousSetBit((int) target);
+                if (written >= 0) leaders.set(written);
+            }
+        }
+        if (targetOperands.intersects(writtenCode)) unknownWrites = true;
+    }
+
+    private void buildBlocks() {
+        Block block = null;
+        for (int address = starts.nextSetBit(0); address >= 0; address = starts.nextSetBit(address + 1)) {
+            if (block != null && (block.end != address || leaders.get(address))) {
+                if (block.end == address) block.successors.add(address);
+                block = null;
+            }
+            if (block == null) {
+                block = new Block(address);
+                blocks.put(address, block);
+            }
+            long instruction = image.get(address);
+            block.end = address + length(instruction);
+            int operation = (int) (instruction % 100);
+            if (operation == 5 || operation == 6 || operation == 99) {
+                terminate(block, address, instruction);
+                block = null;
+            }
+        }
+        for (Block each : blocks.values()) {
+            int written = writtenCode.nextSetBit(each.start);
+            each.selfModified = unknownWrites || (written >= 0 && written < each.end);
+        }
+    }
+
+    private void terminate(Block block, int address, long instruction) {
+        int operation = (int) (instruction % 100);
+        if (operation == 99) {
+            block.halts = true;
+            return;
+        }
+        int modes = (int) (instruction / 100);
+        boolean constant = modes % 10 == IMMEDIATE_MODE;
+        boolean taken = (image.get(address + 1) != 0) == (operation == 5);
+        if (!constant || taken) {
+            if (modes / 10 % 10 == IMMEDIATE_MODE) {
+                long target = image.get(address + 2);
+                if (target >= 0 && target < image.length()) block.successors.add((int) target);
+            } else {
+                block.indirect = true;
+            }
+        }
+        if ((!constant || !taken) && starts.get(block.end)) block.successors.add(block.end);
+    }
+
+    private void loadBlocks(ImageFile file) {
+        for (int index = 0; index < file.blocks(); index++) {
+            Block block = new Block(file.blockStart(index));
+            block.end = file.blockEnd(index);
+            block.indirect = file.blockIndirect(index);
+            block.halts = file.blockHalts(index);
+            block.selfModified = file.blockSelfModified(index);
+            blocks.put(block.start, block);
+            indirectJumps |= block.indirect;
+            if (file.blockIsIndirectTarget(index)) indirectTargets.add(block.start);
+            code.set(block.start, block.end);
+            for (int address = block.start; address < block.end; ) {
+                int length = file.instructionLength(address);
+                if (length == 0) throw new IllegalArgumentException("Corrupted control flow section at " + address);
+                starts.set(address);
+                address += length;
+            }
+        }
+    }
+
+    private void linkBlocks() {
+        for (Block block : blocks.values()) {
+            int last = starts.previousSetBit(block.end - 1);
+            long instruction = image.get(last);
+            int operation = (int) (instruction % 100);
+            if (operation == 5 || operation == 6 || operation == 99) {
+                terminate(block, last, instruction);
+            } else if (starts.get(block.end)) {
+                block.successors.add(block.end);
+            }
+        }
+    }
+
+    private void findDataRegions() {
+        for (int address = code.nextClearBit(0); address < image.length(); address = code.nextClearBit(address)) {
+            int next = code.nextSetBit(address);
+            int end = next < 0 ? image.length() : next;
+            dataRegions.put(address, new Region(address, end));
+            address = end;
+        }
+    }
+
+    public Collection<Block> blocks() {
+        return Collections.unmodifiableCollection(blocks.values());
+    }
+
+    public Block blockAt(int address) {
+        return blocks.get(address);
+    }
+
+    public Block blockContaining(int address) {
+        Map.Entry<Integer, Block> entry = blocks.floorEntry(address);
+        return entry == null || address >= entry.getValue().end ? null : entry.getValue();
+    }
+
+    public Collection<Region> dataRegions() {
+        return Collections.unmodifiableCollection(dataRegions.values());
+    }
+
+    public boolean isCode(int address) {
+        return code.get(address);
+    }
+
+    public boolean isInstruction(int address) {
+        return starts.get(address);
+    }
+
+    public boolean isWrittenByProgram(int address) {
+        return writtenCode.get(address);
+    }
+
+    public boolean hasIndirectJumps() {
+        return indirectJumps;
+    }
+
+    public boolean hasUnknownWrites() {
+        return unknownWrites;
+    }
+
+    public Collection<Integer> indirectTargets() {
+        return Collections.unmodifiableSet(indirectTargets);
+    }
+
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        int address = 0;
+        while (address < image.length()) {
+            Block block = blocks.get(address);
+            Region region = dataRegions.get(address);
+            if (block != null) {
+                dump.append(block).append('\n');
+                for (int instruction = block.start; instruction < block.end; instruction += length(image.get(instruction))) {
+                    dump.append(String.format("%8d: %s%n", instruction, disassemble(instruction)));
+                }
+                address = block.end;
+            } else if (region != null) {
+                dump.append(region).append('\n');
+                address = region.end;
+            } else {
+                address++;
+            }
+        }
+        return dump.toString();
+    }
+
+    private String disassemble(int address) {
+        long instruction = image.get(address);
+        int operation = (int) (instruction % 100);
+        if (operation == 99) return "hlt";
+        StringBuilder text = new StringBuilder(MNEMONICS[operation]);
+        int modes = (int) (instruction / 100);
+        for (int parameter = 1; parameter < length(instruction); parameter++, modes /= 10) {
+            text.append(parameter == 1 ? " " : ", ").append(operand(modes % 10, image.get(address + parameter)));
+        }
+        if (writtenCode.get(address)) text.append("    ; rewritten");
+        return text.toString();
+    }
+
+    private static String operand(int mode, long value) {
+        if (mode == IMMEDIATE_MODE) return "#" + value;
+        if (mode == RELATIVE_MODE) return "[rb" + (value < 0 ? "" : "+") + value + "]";
+        return "[" + value + "]";
+    }
+
+    public static final class Block {
+        private final int start;
+        private int end;
+        private final List<Integer> successors = new ArrayList<>();
+        private boolean indirect;
+        private boolean halts;
+        private boolean selfModified;
+
+        private Block(int start) {
+            this.start = start;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        public List<Integer> successors() {
+            return Collections.unmodifiableList(successors);
+        }
+
+        public boolean indirect() {
+            return indirect;
+        }
+
+        public boolean halts() {
+            return halts;
+        }
+
+        public boolean selfModified() {
+            return selfModified;
+        }
+
+        @Override
+        public String toString() {
+            return "block " + start + "-" + end + " -> " + successors
+                    + (indirect ? " indirect" : "")
+                    + (halts ? " halt" : "")
+                    + (selfModified ? " self-modified" : "");
+        }
+    }
+
+    public static final class Region {
+        private final int start;
+        private final int end;
+
+        private Region(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "data " + start + "-" + end + " (" + (end - start) + " words)";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ControlFlowGraphTest {
+
+    private static final String BRANCHING = "3,20,1008,20,5,21,1005,21,12,104,0,99,1101,99,0,16,104,2,99,0,0,0";
+    private static final String INDIRECT = "1101,9,0,12,6,13,12,99,0,104,2,99,0,0";
+
+    @Test
+    void splitTheProgramIntoBasicBlocks() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse(BRANCHING));
+
+        assertThat(graph.blocks()).extracting(ControlFlowGraph.Block::start).containsExactly(0, 9, 12, 16);
+        assertThat(graph.blockAt(0).successors()).containsExactly(12, 9);
+        assertThat(graph.blockAt(9).halts()).isTrue();
+        assertThat(graph.blockAt(12).successors()).containsExactly(16);
+        assertThat(graph.blockContaining(14)).isSameAs(graph.blockAt(12));
+    }
+
+    @Test
+    void separateDataFromCode() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse(BRANCHING));
+
+        assertThat(graph.dataRegions()).extracting(ControlFlowGraph.Region::start).containsExactly(19);
+        assertThat(graph.isCode(17)).isTrue();
+        assertThat(graph.isInstruction(17)).isFalse();
+        assertThat(graph.isCode(20)).isFalse();
+    }
+
+    @Test
+    void findInstructionsRewrittenByTheProgram() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse(BRANCHING));
+
+        assertThat(graph.isWrittenByProgram(16)).isTrue();
+        assertThat(graph.blockAt(16).selfModified()).isTrue();
+        assertThat(graph.blockAt(0).selfModified()).isFalse();
+        assertThat(graph.dump()).contains("out #2    ; rewritten");
+    }
+
+    @Test
+    void assumeRelativeWritesMayRewriteAnyBlock() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse("109,5,21101,1,1,0,1005,20,12,104,0,99,104,1,99"));
+
+        assertThat(graph.hasUnknownWrites()).isTrue();
+        assertThat(graph.isWrittenByProgram(5)).isFalse();
+        assertThat(graph.blocks()).extracting(ControlFlowGraph.Block::selfModified).containsOnly(true);
+    }
+
+    @Test
+    void assumeWritesThroughRewrittenAddressesMayRewriteAnyBlock() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse("1101,0,0,7,1101,5,5,20,1005,20,13,99,0,104,1,99"));
+
+        assertThat(graph.hasUnknownWrites()).isTrue();
+        assertThat(graph.isWrittenByProgram(7)).isTrue();
+        assertThat(graph.blockAt(13).selfModified()).isTrue();
+        assertThat(ControlFlowGraph.of(ProgramImage.parse(BRANCHING)).hasUnknownWrites()).isFalse();
+    }
+
+    @Test
+    void followIndirectJumpsToTheConstantsTheProgramStores() {
+        ControlFlowGraph graph = ControlFlowGraph.of(ProgramImage.parse(INDIRECT));
+
+        assertThat(graph.hasIndirectJumps()).isTrue();
+        assertThat(graph.blockAt(0).indirect()).isTrue();
+        assertThat(graph.blockAt(0).successors()).containsExactly(7);
+        assertThat(graph.indirectTargets()).containsExactly(9);
+        assertThat(graph.blockAt(9).halts()).isTrue();
+        assertThat(graph.dataRegions()).extracting(ControlFlowGraph.Region::start).containsExactly(8, 12);
+    }
+
+    @Test
+    void dumpARealProgram() throws IOException {
+        ControlFlowGraph graph = ProgramImage.load(Paths.get("./input_day9")).controlFlow();
+
+        assertThat(graph.dump())
+                .startsWith("block 0-11 -> [53, 11]")
+                .contains("       8: jnz [63], #53")
+                .contains("data 63-65 (2 words)");
+    }
+}
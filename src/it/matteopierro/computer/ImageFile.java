@@ -0,0 +1,198 @@
+package it.matteopierro.computer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+
+public final class ImageFile {
+    public static final int DECODE_TABLE = 1;
+    public static final int CONTROL_FLOW = 2;
+    public static final String EXTENSION = ".intcode";
+
+    // "INTC" read as a little-endian int
+    private static final int MAGIC = 0x43544E49;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int BLOCK_BYTES = 12;
+    private static final int INDIRECT = 1;
+    private static final int HALTS = 2;
+    private static final int SELF_MODIFIED = 4;
+    private static final int INDIRECT_TARGET = 8;
+
+    // header: magic, version, sections, length, decode table offset, control flow offset, block count, reserved
+    private final ByteBuffer bytes;
+    private final int sections;
+    private final int length;
+    private final int decodeTableOffset;
+    private final int controlFlowOffset;
+    private final int blockCount;
+    private final ProgramImage image;
+
+    private ImageFile(ByteBuffer bytes) {
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.capacity() < HEADER_BYTES || bytes.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an Intcode image");
+        }
+        if (bytes.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported Intcode image version " + bytes.getInt(4));
+        }
+        this.sections = bytes.getInt(8);
+        this.length = bytes.getInt(12);
+        this.decodeTableOffset = bytes.getInt(16);
+        this.controlFlowOffset = bytes.getInt(20);
+        this.blockCount = bytes.getInt(24);
+        if (HEADER_BYTES + (long) length * Long.BYTES > bytes.capacity()) {
+            throw new IllegalArgumentException("Truncated Intcode image: " + length + " words expected");
+        }
+        ByteBuffer words = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        words.position(HEADER_BYTES).limit(HEADER_BYTES + length * Long.BYTES);
+        this.image = new ProgramImage(words.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(), this);
+    }
+
+    public static ImageFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ImageFile(mapped);
+        }
+    }
+
+    public static boolean isImageFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) return false;
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // machines may still run from a mapping of the old file, so it is replaced rather than rewritten in place
+    public static void write(ProgramImage image, Path target, int sections) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, encode(image, sections).array());
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Path convert(Path text, int sections) throws IOException {
+        Path target = text.resolveSibling(text.getFileName() + EXTENSION);
+        write(ProgramImage.load(text), target, sections);
+        return target;
+    }
+
+    static ByteBuffer encode(ProgramImage image, int sections) {
+        int length = image.length();
+        int decodeTableOffset = HEADER_BYTES + length * Long.BYTES;
+        int decodeTableBytes = (sections & DECODE_TABLE) != 0 ? length : 0;
+        int controlFlowOffset = align(decodeTableOffset + decodeTableBytes, Integer.BYTES);
+        ControlFlowGraph graph = (sections & CONTROL_FLOW) != 0 ? image.controlFlow() : null;
+        Collection<ControlFlowGraph.Block> blocks = graph != null
+                ? graph.blocks()
+                : Collections.<ControlFlowGraph.Block>emptyList();
+
+        ByteBuffer bytes = ByteBuffer.allocate(controlFlowOffset + blocks.size() * BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(sections).putInt(length)
+                .putInt(decodeTableBytes > 0 ? decodeTableOffset : 0)
+                .putInt(blocks.isEmpty() ? 0 : controlFlowOffset)
+                .putInt(blocks.size())
+                .putInt(0);
+        for (int address = 0; address < length; address++) {
+            bytes.putLong(image.get(address));
+        }
+        if (decodeTableBytes > 0) {
+            for (int address = 0; address < length; address++) {
+                bytes.put((byte) ControlFlowGraph.length(image.get(address)));
+            }
+        }
+        bytes.position(controlFlowOffset);
+        for (ControlFlowGraph.Block block : blocks) {
+            bytes.putInt(block.start()).putInt(block.end()).putInt(flags(graph, block));
+        }
+        return bytes;
+    }
+
+    private static int flags(ControlFlowGraph graph, ControlFlowGraph.Block block) {
+        return (block.indirect() ? INDIRECT : 0) | (block.halts() ? HALTS : 0) | (block.selfModified() ? SELF_MODIFIED : 0)
+                | (graph.indirectTargets().contains(block.start()) ? INDIRECT_TARGET : 0);
+    }
+
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    public ProgramImage image() {
+        return image;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean hasDecodeTable() {
+        return (sections & DECODE_TABLE) != 0 && decodeTableOffset > 0;
+    }
+
+    public int instructionLength(int address) {
+        if (!hasDecodeTable()) return ControlFlowGraph.length(image.get(address));
+        return bytes.get(decodeTableOffset + address);
+    }
+
+    public boolean hasControlFlow() {
+        return (sections & CONTROL_FLOW) != 0 && controlFlowOffset > 0;
+    }
+
+    public int blocks() {
+        return blockCount;
+    }
+
+    public int blockStart(int block) {
+        return bytes.getInt(blockOffset(block));
+    }
+
+    public int blockEnd(int block) {
+        return bytes.getInt(blockOffset(block) + Integer.BYTES);
+    }
+
+    public boolean blockHalts(int block) {
+        return (blockFlags(block) & HALTS) != 0;
+    }
+
+    public boolean blockIndirect(int block) {
+        return (blockFlags(block) & INDIRECT) != 0;
+    }
+
+    public boolean blockSelfModified(int block) {
+        return (blockFlags(block) & SELF_MODIFIED) != 0;
+    }
+
+    public boolean blockIsIndirectTarget(int block) {
+        return (blockFlags(block) & INDIRECT_TARGET) != 0;
+    }
+
+    private int blockFlags(int block) {
+        return bytes.getInt(blockOffset(block) + 2 * Integer.BYTES);
+    }
+
+    private int blockOffset(int block) {
+        if (block < 0 || block >= blockCount) {
+            throw new IndexOutOfBoundsException("Block " + block + " of " + blockCount);
+        }
+        return controlFlowOffset + block * BLOCK_BYTES;
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String input : args) {
+            Path target = convert(Paths.get(input), DECODE_TABLE | CONTROL_FLOW);
+            System.out.println(input + " -> " + target + " (" + Files.size(target) + " bytes)");
+        }
+    }
+}
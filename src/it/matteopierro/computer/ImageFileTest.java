@@ -0,0 +1,103 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageFileTest {
+
+    @Test
+    void keepEveryWordOfTheTextProgram() throws IOException {
+        ProgramImage text = ProgramImage.load(Paths.get("./input_day9"));
+        Path binary = temporaryImage(text, 0);
+
+        ImageFile file = ImageFile.map(binary);
+
+        assertThat(file.length()).isEqualTo(text.length());
+        assertThat(file.image().toArray()).containsExactly(text.toArray());
+        assertThat(Files.size(binary)).isEqualTo(32L + 8L * text.length());
+    }
+
+    @Test
+    void runMappedImagesLikeParsedOnes() throws IOException {
+        ProgramImage text = ProgramImage.load(Paths.get("./input_day9"));
+        Path binary = temporaryImage(text, ImageFile.DECODE_TABLE);
+
+        ProgramImage mapped = ProgramImage.load(binary);
+
+        assertThat(ImageFile.isImageFile(binary)).isTrue();
+        assertThat(ImageFile.isImageFile(Paths.get("./input_day9"))).isFalse();
+        assertThat(run(mapped, 1)).isEqualTo(run(text, 1));
+    }
+
+    @Test
+    void keepMappedImagesIntactWhenTheFileIsReplaced() throws IOException {
+        ProgramImage first = ProgramImage.parse("104,1,99");
+        Path binary = temporaryImage(first, 0);
+        ProgramImage mapped = ImageFile.map(binary).image();
+
+        ImageFile.write(ProgramImage.parse("104,22,99"), binary, 0);
+
+        assertThat(mapped.get(1)).isEqualTo(1L);
+        assertThat(ImageFile.map(binary).image().get(1)).isEqualTo(22L);
+    }
+
+    @Test
+    void storeTheDecodeTableAndTheControlFlow() throws IOException {
+        ProgramImage text = ProgramImage.load(Paths.get("./input_day9"));
+        ImageFile file = ImageFile.map(temporaryImage(text, ImageFile.DECODE_TABLE | ImageFile.CONTROL_FLOW));
+
+        assertThat(file.hasDecodeTable()).isTrue();
+        for (int address = 0; address < text.length(); address++) {
+            assertThat(file.instructionLength(address)).isEqualTo(ControlFlowGraph.length(text.get(address)));
+        }
+        assertThat(file.hasControlFlow()).isTrue();
+        List<ControlFlowGraph.Block> blocks = new ArrayList<>(text.controlFlow().blocks());
+        assertThat(file.blocks()).isEqualTo(blocks.size());
+        for (int block = 0; block < blocks.size(); block++) {
+            assertThat(file.blockStart(block)).isEqualTo(blocks.get(block).start());
+            assertThat(file.blockEnd(block)).isEqualTo(blocks.get(block).end());
+            assertThat(file.blockHalts(block)).isEqualTo(blocks.get(block).halts());
+        }
+    }
+
+    @Test
+    void rebuildTheAnalysesFromTheStoredSections() throws IOException {
+        for (String day : new String[]{"./input_day5", "./input_day9", "./input_day23", "./input_day25"}) {
+            ProgramImage text = ProgramImage.load(Paths.get(day));
+            ProgramImage mapped = ImageFile.map(temporaryImage(text, ImageFile.DECODE_TABLE | ImageFile.CONTROL_FLOW)).image();
+
+            ControlFlowGraph expected = text.controlFlow();
+            ControlFlowGraph stored = mapped.controlFlow();
+            assertThat(stored.dump()).isEqualTo(expected.dump());
+            assertThat(stored.indirectTargets()).isEqualTo(expected.indirectTargets());
+            assertThat(stored.hasIndirectJumps()).isEqualTo(expected.hasIndirectJumps());
+            for (ControlFlowGraph.Block block : expected.blocks()) {
+                assertThat(stored.blockAt(block.start()).successors()).isEqualTo(block.successors());
+            }
+            assertThat(mapped.peephole().fused()).isEqualTo(text.peephole().fused());
+            assertThat(Arrays.equals(mapped.peephole().kinds, text.peephole().kinds)).isTrue();
+        }
+    }
+
+    private static Path temporaryImage(ProgramImage image, int sections) throws IOException {
+        Path binary = Files.createTempFile("image", ImageFile.EXTENSION);
+        binary.toFile().deleteOnExit();
+        ImageFile.write(image, binary, sections);
+        return binary;
+    }
+
+    private static List<Long> run(ProgramImage image, long input) {
+        List<Long> outputs = new ArrayList<>();
+        image.newMachine().execute(() -> input, outputs::add);
+        return outputs;
+    }
+}
@@ -0,0 +1,290 @@
+package it.matteopierro.computer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LockstepMachine {
+    private static final int SUM_OPERATION = 1;
+    private static final int MULTIPLY_OPERATION = 2;
+    private static final int SAVE_OPERATION = 3;
+    private static final int READ_OPERATION = 4;
+    private static final int JUMP_IF_TRUE = 5;
+    private static final int JUMP_IF_FALSE = 6;
+    private static final int LESS_OPERATION = 7;
+    private static final int EQUAL_OPERATION = 8;
+    private static final int ADJUST_RELATIVE_BASE_OPERATION = 9;
+    private static final int STOP_OPERATION = 99;
+
+    private static final int POSITION_MODE = 0;
+    private static final int RELATIVE_MODE = 2;
+    // pages are small because every page holds its words for all the lanes
+    private static final int PAGE_BITS = 6;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+    private static final int DIRECTORY_LIMIT = 1 << 16;
+
+    private final int lanes;
+    private final long programLength;
+    // struct of arrays: within a page, word a of lane l lives at a * lanes + l, so one instruction touches adjacent slots
+    private long[][] directory = new long[16][];
+    private final Map<Long, long[]> farPages = new HashMap<>();
+    private final long[] instructionPointers;
+    private final long[] relativeBases;
+    private final long[][] inputs;
+    private final int[] inputPositions;
+    private final long[][] outputs;
+    private final int[] outputCounts;
+    private final boolean[] halted;
+    private final int[] running;
+    private int runningCount;
+    private final int[] group;
+    private long dispatches = 0;
+    private long laneInstructions = 0;
+
+    public LockstepMachine(ProgramImage image, int lanes) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("Lanes must be positive: " + lanes);
+        }
+        this.lanes = lanes;
+        this.programLength = image.length();
+        for (int address = 0; address < image.length(); address++) {
+            int slot = (address & OFFSET_MASK) * lanes;
+            Arrays.fill(pageForWrite(address >>> PAGE_BITS), slot, slot + lanes, image.get(address));
+        }
+        this.instructionPointers = new long[lanes];
+        this.relativeBases = new long[lanes];
+        this.inputs = new long[lanes][];
+        Arrays.fill(inputs, new long[0]);
+        this.inputPositions = new int[lanes];
+        this.outputs = new long[lanes][4];
+        this.outputCounts = new int[lanes];
+        this.halted = new boolean[lanes];
+        this.running = new int[lanes];
+        this.group = new int[lanes];
+    }
+
+    public static List<long[]> run(ProgramImage image, List<long[]> inputs) {
+        LockstepMachine machine = new LockstepMachine(image, inputs.size());
+        for (int lane = 0; lane < inputs.size(); lane++) {
+            machine.input(lane, inputs.get(lane));
+        }
+        machine.run();
+        List<long[]> outputs = new ArrayList<>();
+        for (int lane = 0; lane < inputs.size(); lane++) {
+            outputs.add(machine.outputs(lane));
+        }
+        return outputs;
+    }
+
+    public void input(int lane, long... values) {
+        inputs[lane] = values.clone();
+        inputPositions[lane] = 0;
+    }
+
+    public void run() {
+        runningCount = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (!halted[lane]) running[runningCount++] = lane;
+        }
+        while (runningCount > 0) {
+            int size = nextGroup();
+            if (size == 0) break;
+            dispatches++;
+            laneInstructions += size;
+            execute(size);
+        }
+    }
+
+    // lanes that diverged rejoin as soon as they reach the same instruction: the lowest one always runs first
+    private int nextGroup() {
+        long pc = Long.MAX_VALUE;
+        boolean ended = false;
+        for (int i = 0; i < runningCount; i++) {
+            int lane = running[i];
+            // like Machine, a lane that runs past the end of the image halts
+            if (instructionPointers[lane] >= programLength) {
+                halted[lane] = true;
+                ended = true;
+            } else {
+                pc = Math.min(pc, instructionPointers[lane]);
+            }
+        }
+        if (ended) removeHalted();
+        long instruction = 0;
+        boolean found = false;
+        int size = 0;
+        for (int i = 0; i < runningCount; i++) {
+            int lane = running[i];
+            if (instructionPointers[lane] != pc) continue;
+            long word = get(lane, pc);
+            if (!found) {
+                instruction = word;
+                found = true;
+            }
+            if (word == instruction) group[size++] = lane;
+        }
+        return size;
+    }
+
+    private void execute(int size) {
+        int lead = group[0];
+        long pc = instructionPointers[lead];
+        long instruction = get(lead, pc);
+        int modes = (int) (instruction / 100);
+        int firstMode = modes % 10;
+        int secondMode = modes / 10 % 10;
+        int thirdMode = modes / 100;
+        switch ((int) (instruction % 100)) {
+            case SUM_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    write(lane, pc + 3, thirdMode, read(lane, pc + 1, firstMode) + read(lane, pc + 2, secondMode));
+                    instructionPointers[lane] = pc + 4;
+                }
+                break;
+            case MULTIPLY_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    write(lane, pc + 3, thirdMode, read(lane, pc + 1, firstMode) * read(lane, pc + 2, secondMode));
+                    instructionPointers[lane] = pc + 4;
+                }
+                break;
+            case SAVE_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    if (inputPositions[lane] == inputs[lane].length) {
+                        throw new IllegalStateException("Lane " + lane + " asked for more than " + inputs[lane].length + " inputs");
+                    }
+                    write(lane, pc + 1, firstMode, inputs[lane][inputPositions[lane]++]);
+                    instructionPointers[lane] = pc + 2;
+                }
+                break;
+            case READ_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    output(lane, read(lane, pc + 1, firstMode));
+                    instructionPointers[lane] = pc + 2;
+                }
+                break;
+            case JUMP_IF_TRUE:
+            case JUMP_IF_FALSE:
+                boolean jumpIfTrue = instruction % 100 == JUMP_IF_TRUE;
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    instructionPointers[lane] = (read(lane, pc + 1, firstMode) != 0) == jumpIfTrue
+                            ? read(lane, pc + 2, secondMode)
+                            : pc + 3;
+                }
+                break;
+            case LESS_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    write(lane, pc + 3, thirdMode, read(lane, pc + 1, firstMode) < read(lane, pc + 2, secondMode) ? 1 : 0);
+                    instructionPointers[lane] = pc + 4;
+                }
+                break;
+            case EQUAL_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    write(lane, pc + 3, thirdMode, read(lane, pc + 1, firstMode) == read(lane, pc + 2, secondMode) ? 1 : 0);
+                    instructionPointers[lane] = pc + 4;
+                }
+                break;
+            case ADJUST_RELATIVE_BASE_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    int lane = group[i];
+                    relativeBases[lane] += read(lane, pc + 1, firstMode);
+                    instructionPointers[lane] = pc + 2;
+                }
+                break;
+            case STOP_OPERATION:
+                for (int i = 0; i < size; i++) {
+                    halted[group[i]] = true;
+                }
+                removeHalted();
+                break;
+            default:
+                throw new RuntimeException("Not Supported Operation!" + instruction);
+        }
+    }
+
+    private void removeHalted() {
+        int kept = 0;
+        for (int i = 0; i < runningCount; i++) {
+            if (!halted[running[i]]) running[kept++] = running[i];
+        }
+        runningCount = kept;
+    }
+
+    private long read(int lane, long parameter, int mode) {
+        long value = get(lane, parameter);
+        if (mode == POSITION_MODE) return get(lane, value);
+        if (mode == RELATIVE_MODE) return get(lane, relativeBases[lane] + value);
+        return value;
+    }
+
+    private void write(int lane, long parameter, int mode, long value) {
+        long address = get(lane, parameter);
+        set(lane, mode == RELATIVE_MODE ? relativeBases[lane] + address : address, value);
+    }
+
+    private void output(int lane, long value) {
+        if (outputCounts[lane] == outputs[lane].length) {
+            outputs[lane] = Arrays.copyOf(outputs[lane], outputCounts[lane] * 2);
+        }
+        outputs[lane][outputCounts[lane]++] = value;
+    }
+
+    // addresses are unsigned 64-bit, as in PagedMemory
+    public long get(int lane, long address) {
+        long pageNumber = address >>> PAGE_BITS;
+        long[] page = pageNumber < directory.length ? directory[(int) pageNumber] : farPages.get(pageNumber);
+        return page == null ? 0 : page[((int) address & OFFSET_MASK) * lanes + lane];
+    }
+
+    public void set(int lane, long address, long value) {
+        pageForWrite(address >>> PAGE_BITS)[((int) address & OFFSET_MASK) * lanes + lane] = value;
+    }
+
+    private long[] pageForWrite(long pageNumber) {
+        if (pageNumber < directory.length) {
+            long[] page = directory[(int) pageNumber];
+            return page != null ? page : (directory[(int) pageNumber] = newPage());
+        }
+        if (pageNumber < DIRECTORY_LIMIT) {
+            directory = Arrays.copyOf(directory, (int) Math.min(DIRECTORY_LIMIT, Math.max(pageNumber + 1, directory.length * 2L)));
+            return directory[(int) pageNumber] = newPage();
+        }
+        return farPages.computeIfAbsent(pageNumber, number -> newPage());
+    }
+
+    private long[] newPage() {
+        if ((long) PAGE_SIZE * lanes > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many lanes for one page: " + lanes);
+        }
+        return new long[PAGE_SIZE * lanes];
+    }
+
+    public long[] outputs(int lane) {
+        return Arrays.copyOf(outputs[lane], outputCounts[lane]);
+    }
+
+    public boolean halted(int lane) {
+        return halted[lane];
+    }
+
+    public int lanes() {
+        return lanes;
+    }
+
+    public long dispatches() {
+        return dispatches;
+    }
+
+    public long laneInstructions() {
+        return laneInstructions;
+    }
+}
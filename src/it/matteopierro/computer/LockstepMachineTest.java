@@ -0,0 +1,105 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LockstepMachineTest {
+
+    @Test
+    void runEveryLaneWithItsOwnInputs() {
+        List<long[]> inputs = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            inputs.add(new long[]{i, i * 2});
+        }
+
+        List<long[]> outputs = LockstepMachine.run(ProgramImage.parse("3,11,3,12,1,11,12,13,4,13,99,0,0,0"), inputs);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(outputs.get(i)).containsExactly(3L * i);
+        }
+    }
+
+    @Test
+    void splitAndMergeLanesOnDivergentBranches() {
+        // outputs max(input, 10) through a branch that only some lanes take
+        ProgramImage image = ProgramImage.parse("3,20,1007,20,10,21,1005,21,14,4,20,1105,1,16,104,10,99");
+        LockstepMachine machine = new LockstepMachine(image, 4);
+        machine.input(0, 3);
+        machine.input(1, 12);
+        machine.input(2, 7);
+        machine.input(3, 40);
+
+        machine.run();
+
+        assertThat(machine.outputs(0)).containsExactly(10L);
+        assertThat(machine.outputs(1)).containsExactly(12L);
+        assertThat(machine.outputs(2)).containsExactly(10L);
+        assertThat(machine.outputs(3)).containsExactly(40L);
+        assertThat(machine.dispatches()).isEqualTo(7L);
+        assertThat(machine.laneInstructions()).isEqualTo(22L);
+    }
+
+    @Test
+    void addressTheWholeRangeLikeMachine() {
+        String program = "109,1099511627776,21101,5,6,0,204,0,1101,1,2,-1,4,-1,99";
+        LockstepMachine machine = new LockstepMachine(ProgramImage.parse(program), 3);
+
+        machine.run();
+
+        for (int lane = 0; lane < 3; lane++) {
+            assertThat(machine.outputs(lane)).containsExactly(11L, 3L);
+            assertThat(machine.get(lane, 1099511627776L)).isEqualTo(11L);
+        }
+        ComputerListener listener = new ComputerListener();
+        Machine.of(program).execute(listener);
+        assertThat(listener.results()).containsExactly("11", "3");
+    }
+
+    @Test
+    void haltLanesThatRunPastTheImage() {
+        LockstepMachine machine = new LockstepMachine(ProgramImage.parse("104,7"), 2);
+
+        machine.run();
+
+        assertThat(machine.halted(0)).isTrue();
+        assertThat(machine.halted(1)).isTrue();
+        assertThat(machine.outputs(1)).containsExactly(7L);
+    }
+
+    @Test
+    void scanTheTractorBeam() throws IOException {
+        List<long[]> points = new ArrayList<>();
+        for (long x = 0; x < 50; x++) {
+            for (long y = 0; y < 50; y++) {
+                points.add(new long[]{x, y});
+            }
+        }
+
+        long affectedPoints = LockstepMachine.run(ProgramImage.load(Paths.get("./input_day19")), points).stream()
+                .filter(result -> result[0] == 1)
+                .count();
+
+        assertThat(affectedPoints).isEqualTo(206L);
+    }
+
+    @Test
+    void sweepNounsAndVerbsInOneBatch() throws IOException {
+        LockstepMachine machine = new LockstepMachine(ProgramImage.load(Paths.get("./input_day2")), 10_000);
+        for (int lane = 0; lane < 10_000; lane++) {
+            machine.set(lane, 1, lane / 100);
+            machine.set(lane, 2, lane % 100);
+        }
+
+        machine.run();
+
+        assertThat(machine.get(12 * 100 + 2, 0)).isEqualTo(4945026L);
+        assertThat(machine.get(5296, 0)).isEqualTo(19690720L);
+        assertThat(machine.dispatches() * 10_000).isEqualTo(machine.laneInstructions());
+    }
+}
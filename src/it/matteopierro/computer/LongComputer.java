@@ -0,0 +1,46 @@
+package it.matteopierro.computer;
+
+import java.util.List;
+
+public class LongComputer {
+    private final boolean tiered;
+
+    public LongComputer() {
+        this(false);
+    }
+
+    private LongComputer(boolean tiered) {
+        this.tiered = tiered;
+    }
+
+    public static LongComputer tiered() {
+        return new LongComputer(true);
+    }
+
+    public List<String> execute(String program, String... inputs) {
+        return execute(ProgramImage.parse(program), new ComputerListener(inputs));
+    }
+
+    public List<String> execute(String[] instructions, String... inputs) {
+        return execute(instructions, new ComputerListener(inputs));
+    }
+
+    public int execute(String program, ComputerListener listener) {
+        List<String> results = execute(ProgramImage.parse(program), listener);
+        return Integer.parseInt(results.get(results.size() - 1));
+    }
+
+    public List<String> execute(String[] instructions, ComputerListener listener) {
+        return execute(new Machine(Machine.parse(instructions)), listener);
+    }
+
+    public List<String> execute(ProgramImage image, ComputerListener listener) {
+        return execute(image.newMachine(), listener);
+    }
+
+    private List<String> execute(Machine machine, ComputerListener listener) {
+        if (tiered) machine.tiered();
+        machine.execute(listener);
+        return listener.results();
+    }
+}
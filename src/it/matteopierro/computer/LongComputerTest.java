@@ -0,0 +1,81 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongComputerTest {
+
+    @Test
+    void restoreTheGravityAssistProgram() throws IOException {
+        long[] program = Machine.parse(Files.readString(Paths.get("./input_day2")).split(","));
+        program[1] = 12;
+        program[2] = 2;
+        Machine machine = new Machine(program);
+
+        machine.execute(new ComputerListener());
+
+        assertThat(machine.get(0)).isEqualTo(4945026L);
+    }
+
+    @Test
+    void runTheDiagnosticProgram() throws IOException {
+        String program = Files.readString(Paths.get("./input_day5"));
+
+        assertThat(new LongComputer().execute(program, "1"))
+                .containsExactly("0", "0", "0", "0", "0", "0", "0", "0", "0", "12234644");
+        assertThat(new LongComputer().execute(program, "5")).containsExactly("3508186");
+    }
+
+    @Test
+    void runTheBoostProgram() throws IOException {
+        String program = Files.readString(Paths.get("./input_day9"));
+
+        assertThat(new LongComputer().execute(program, "1")).containsExactly("3906448201");
+        assertThat(new LongComputer().execute(program, "2")).containsExactly("59785");
+    }
+
+    @Test
+    void copyTheInputToTheOutputThroughTheRelativeBase() {
+        String program = "109,1,204,-1,1001,100,1,100,1008,100,16,101,1006,101,0,99";
+
+        List<String> results = new LongComputer().execute(program);
+
+        assertThat(String.join(",", results)).isEqualTo(program);
+    }
+
+    @Test
+    void keepTheRelativeBaseAcrossInstructions() {
+        Machine machine = Machine.of("109,1,204,-1,1001,100,1,100,1008,100,16,101,99");
+
+        machine.execute(new ComputerListener());
+
+        assertThat(machine.relativeBase()).isEqualTo(1L);
+        assertThat(machine.get(100)).isEqualTo(1L);
+        assertThat(machine.get(101)).isEqualTo(0L);
+    }
+
+    @Test
+    void outputLargeNumbers() {
+        assertThat(new LongComputer().execute("104,1125899906842624,99")).containsExactly("1125899906842624");
+        assertThat(new LongComputer().execute("1102,34915192,34915192,7,4,7,99,0"))
+                .containsExactly(String.valueOf(34915192L * 34915192L));
+    }
+
+    @Test
+    void growMemoryForAddressesPastTheProgram() {
+        Machine machine = Machine.of("1101,5,6,1000000,4,1000000,99");
+        ComputerListener listener = new ComputerListener();
+
+        machine.execute(listener);
+
+        assertThat(listener.results()).containsExactly("11");
+        assertThat(machine.get(1000000)).isEqualTo(11L);
+        assertThat(machine.get(2000000)).isEqualTo(0L);
+    }
+}
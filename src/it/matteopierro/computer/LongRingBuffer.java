@@ -0,0 +1,165 @@
+package it.matteopierro.computer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+public final class LongRingBuffer implements LongSupplier, LongConsumer {
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final int SPINS_BEFORE_YIELD = 256;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(LongRingBuffer.class, "head", long.class);
+            TAIL = lookup.findVarHandle(LongRingBuffer.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public enum WaitStrategy {
+        SPIN,
+        PARK
+    }
+
+    private final long[] values;
+    private final int mask;
+    private final boolean park;
+
+    // consumer side, padded away from the producer side to avoid false sharing
+    private long head;
+    private long tailCache;
+    private long p1, p2, p3, p4, p5, p6, p7;
+    // producer side
+    private long tail;
+    private long headCache;
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+    private volatile boolean closed;
+
+    public LongRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.values = new long[size];
+        this.mask = size - 1;
+        this.park = waitStrategy == WaitStrategy.PARK;
+    }
+
+    public void put(long value) {
+        long position = tail;
+        if (position - headCache == values.length) {
+            headCache = (long) HEAD.getAcquire(this);
+            for (int spins = 0; position - headCache == values.length; spins++) {
+                if (closed) return;
+                awaitSpace(position, spins);
+                headCache = (long) HEAD.getAcquire(this);
+            }
+        }
+        values[(int) position & mask] = value;
+        if (park) {
+            TAIL.setVolatile(this, position + 1);
+            Thread consumer = waitingConsumer;
+            if (consumer != null) LockSupport.unpark(consumer);
+        } else {
+            TAIL.setRelease(this, position + 1);
+        }
+    }
+
+    public long take() {
+        long position = head;
+        if (position == tailCache) {
+            tailCache = (long) TAIL.getAcquire(this);
+            for (int spins = 0; position == tailCache; spins++) {
+                if (closed && (long) TAIL.getVolatile(this) == position) {
+                    throw new IllegalStateException("No more values: the buffer is closed");
+                }
+                awaitValue(position, spins);
+                tailCache = (long) TAIL.getAcquire(this);
+            }
+        }
+        long value = values[(int) position & mask];
+        if (park) {
+            HEAD.setVolatile(this, position + 1);
+            Thread producer = waitingProducer;
+            if (producer != null) LockSupport.unpark(producer);
+        } else {
+            HEAD.setRelease(this, position + 1);
+        }
+        return value;
+    }
+
+    private void awaitValue(long position, int spins) {
+        if (park) {
+            waitingConsumer = Thread.currentThread();
+            if ((long) TAIL.getVolatile(this) == position && !closed) LockSupport.park(this);
+            waitingConsumer = null;
+        } else {
+            spin(spins);
+        }
+        checkInterrupted();
+    }
+
+    private void awaitSpace(long position, int spins) {
+        if (park) {
+            waitingProducer = Thread.currentThread();
+            if (position - (long) HEAD.getVolatile(this) == values.length && !closed) LockSupport.park(this);
+            waitingProducer = null;
+        } else {
+            spin(spins);
+        }
+        checkInterrupted();
+    }
+
+    private static void spin(int spins) {
+        // give the other side a chance to run when there are fewer cores than busy threads
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException(new InterruptedException());
+        }
+    }
+
+    public void close() {
+        closed = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return (int) ((long) TAIL.getAcquire(this) - (long) HEAD.getAcquire(this));
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    @Override
+    public long getAsLong() {
+        return take();
+    }
+
+    @Override
+    public void accept(long value) {
+        put(value);
+    }
+}
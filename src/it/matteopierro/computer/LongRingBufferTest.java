@@ -0,0 +1,78 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongRingBufferTest {
+
+    @Test
+    void keepValuesInOrder() {
+        LongRingBuffer buffer = new LongRingBuffer(3, LongRingBuffer.WaitStrategy.SPIN);
+
+        buffer.put(1);
+        buffer.put(2);
+        assertThat(buffer.take()).isEqualTo(1L);
+        buffer.put(3);
+        buffer.put(4);
+        buffer.put(5);
+
+        assertThat(buffer.capacity()).isEqualTo(4);
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.take()).isEqualTo(2L);
+        assertThat(buffer.take()).isEqualTo(3L);
+    }
+
+    @Test
+    void passValuesBetweenThreadsWhileSpinning() {
+        assertThat(transfer(LongRingBuffer.WaitStrategy.SPIN)).isEqualTo(sumUpTo(1_000_000));
+    }
+
+    @Test
+    void passValuesBetweenThreadsWhileParking() {
+        assertThat(transfer(LongRingBuffer.WaitStrategy.PARK)).isEqualTo(sumUpTo(1_000_000));
+    }
+
+    @Test
+    void drainAClosedBufferThenFail() {
+        LongRingBuffer buffer = new LongRingBuffer(2, LongRingBuffer.WaitStrategy.PARK);
+        buffer.put(7);
+        buffer.close();
+
+        assertThat(buffer.take()).isEqualTo(7L);
+        assertThatThrownBy(buffer::take).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void dropValuesOnceAFullBufferIsClosed() {
+        LongRingBuffer buffer = new LongRingBuffer(1, LongRingBuffer.WaitStrategy.PARK);
+        buffer.put(1);
+        buffer.close();
+
+        buffer.put(2);
+
+        assertThat(buffer.size()).isEqualTo(1);
+    }
+
+    private static long transfer(LongRingBuffer.WaitStrategy waitStrategy) {
+        LongRingBuffer buffer = new LongRingBuffer(64, waitStrategy);
+        CompletableFuture<Long> consumer = CompletableFuture.supplyAsync(() -> {
+            long sum = 0;
+            for (int i = 1; i <= 1_000_000; i++) {
+                sum += buffer.take();
+            }
+            return sum;
+        });
+        for (int i = 1; i <= 1_000_000; i++) {
+            buffer.put(i);
+        }
+        return consumer.join();
+    }
+
+    private static long sumUpTo(long n) {
+        return n * (n + 1) / 2;
+    }
+}
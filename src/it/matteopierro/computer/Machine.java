@@ -0,0 +1,599 @@
+package it.matteopierro.computer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+public class Machine {
+    private static final int SUM_OPERATION = 1;
+    private static final int MULTIPLY_OPERATION = 2;
+    private static final int SAVE_OPERATION = 3;
+    private static final int READ_OPERATION = 4;
+    private static final int JUMP_IF_TRUE = 5;
+    private static final int JUMP_IF_FALSE = 6;
+    private static final int LESS_OPERATION = 7;
+    private static final int EQUAL_OPERATION = 8;
+    private static final int ADJUST_RELATIVE_BASE_OPERATION = 9;
+    private static final int STOP_OPERATION = 99;
+
+    private static final int POSITION_MODE = 0;
+    private static final int RELATIVE_MODE = 2;
+
+    private static final int COMPILE_THRESHOLD = 1000;
+    private static final int MAX_DEOPTIMIZATIONS = 8;
+    private static final int NEVER_COMPILE = Integer.MIN_VALUE;
+
+    private final ProgramImage image;
+    private final int programLength;
+    private final PagedMemory memory;
+    private long instructionPointer = 0;
+    private long relativeBase = 0;
+    private long[] inputs = new long[4];
+    private int inputHead = 0;
+    private int inputTail = 0;
+    private long output;
+    private long executed = 0;
+    private long sliceEnd = Long.MAX_VALUE;
+    // stores that hit compiled or fused code, a compiled block returns right after one
+    private long codeRewrites = 0;
+
+    private Profiler profiler;
+    private Tracer tracer;
+
+    private Peephole peephole;
+
+    private BlockCompiler compiler;
+    private int[] blockCounters;
+    private int[] deoptimizations;
+    private int[] compiledCoverage;
+    private BlockCompiler.Block[] compiledBlocks;
+    private final List<BlockCompiler.Block> blocks = new ArrayList<>();
+
+    public Machine(long[] program) {
+        this(ProgramImage.of(program));
+    }
+
+    public Machine(ProgramImage image) {
+        this(image, image.newMemory());
+    }
+
+    private Machine(ProgramImage image, PagedMemory memory) {
+        this.image = image;
+        this.programLength = image.length();
+        this.memory = memory;
+    }
+
+    public Machine tiered() {
+        if (compiler == null) compiler = image.blockCompiler();
+        blockCounters = new int[programLength];
+        deoptimizations = new int[programLength];
+        compiledCoverage = new int[programLength];
+        compiledBlocks = new BlockCompiler.Block[programLength];
+        blocks.clear();
+        return this;
+    }
+
+    public Machine fused() {
+        peephole = image.peephole().copyFor(this, image);
+        return this;
+    }
+
+    public Machine profile(Profiler profiler) {
+        if (!Profiler.ENABLED) {
+            throw new IllegalStateException("Profiling is compiled out, run with -Dintcode.profiling=true");
+        }
+        this.profiler = profiler;
+        return this;
+    }
+
+    public Profiler profiler() {
+        return profiler;
+    }
+
+    public Machine trace(Tracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    public Tracer tracer() {
+        return tracer;
+    }
+
+    public void reset() {
+        memory.load(image);
+        instructionPointer = 0;
+        relativeBase = 0;
+        inputHead = 0;
+        inputTail = 0;
+        output = 0;
+        if (peephole != null) fused();
+        if (compiler != null) tiered();
+    }
+
+    public Snapshot snapshot() {
+        if (hasPendingInput()) {
+            throw new IllegalStateException("Cannot snapshot a machine with pending inputs");
+        }
+        return new Snapshot(image, memory.fork(), instructionPointer, relativeBase);
+    }
+
+    public boolean sameStateAs(Machine other) {
+        return image == other.image
+                && instructionPointer == other.instructionPointer
+                && relativeBase == other.relativeBase
+                && Arrays.equals(pendingInputs(), other.pendingInputs())
+                && memory.contentEquals(other.memory);
+    }
+
+    public Machine fork() {
+        Machine fork = new Machine(image, memory.fork());
+        fork.instructionPointer = instructionPointer;
+        fork.relativeBase = relativeBase;
+        fork.inputs = inputs.clone();
+        fork.inputHead = inputHead;
+        fork.inputTail = inputTail;
+        fork.output = output;
+        if (peephole != null) fork.fused();
+        if (compiler != null) fork.tiered();
+        return fork;
+    }
+
+    public void restore(Snapshot snapshot) {
+        if (snapshot.image != image) {
+            throw new IllegalArgumentException("Snapshot was taken from another program");
+        }
+        memory.restore(snapshot.memory);
+        instructionPointer = snapshot.instructionPointer;
+        relativeBase = snapshot.relativeBase;
+        inputHead = 0;
+        inputTail = 0;
+        output = 0;
+        if (peephole != null) fused();
+        if (compiler != null) tiered();
+    }
+
+    static Machine restored(ProgramImage image, PagedMemory memory, long instructionPointer, long relativeBase, long[] inputs, long output) {
+        Machine machine = new Machine(image, memory);
+        machine.instructionPointer = instructionPointer;
+        machine.relativeBase = relativeBase;
+        for (long input : inputs) {
+            machine.addInput(input);
+        }
+        machine.output = output;
+        return machine;
+    }
+
+    long[] pendingInputs() {
+        long[] pending = new long[inputTail - inputHead];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = inputs[(inputHead + i) & (inputs.length - 1)];
+        }
+        return pending;
+    }
+
+    ProgramImage image() {
+        return image;
+    }
+
+    static Snapshot warmUp(ProgramImage image) {
+        Machine machine = new Machine(image);
+        if (machine.run() == State.NEEDS_INPUT) {
+            return machine.snapshot();
+        }
+        return new Machine(image).snapshot();
+    }
+
+    public static final class Snapshot {
+        private final ProgramImage image;
+        private final PagedMemory memory;
+        private final long instructionPointer;
+        private final long relativeBase;
+
+        private Snapshot(ProgramImage image, PagedMemory memory, long instructionPointer, long relativeBase) {
+            this.image = image;
+            this.memory = memory;
+            this.instructionPointer = instructionPointer;
+            this.relativeBase = relativeBase;
+        }
+
+        public Machine newMachine() {
+            Machine machine = new Machine(image, memory.fork());
+            machine.instructionPointer = instructionPointer;
+            machine.relativeBase = relativeBase;
+            return machine;
+        }
+
+        public long instructionPointer() {
+            return instructionPointer;
+        }
+
+        public long relativeBase() {
+            return relativeBase;
+        }
+    }
+
+    public static Machine of(String program) {
+        return new Machine(ProgramImage.parse(program));
+    }
+
+    public static long[] parse(String[] instructions) {
+        long[] program = new long[instructions.length];
+        for (int i = 0; i < instructions.length; i++) {
+            program[i] = Long.parseLong(instructions[i].trim());
+        }
+        return program;
+    }
+
+    public enum State {
+        NEEDS_INPUT,
+        OUTPUT,
+        HALTED,
+        YIELDED
+    }
+
+    public void execute(ComputerListener listener) {
+        execute(() -> Long.parseLong(listener.onReadRequested()),
+                value -> listener.onStoreRequested(String.valueOf(value)));
+    }
+
+    public void execute(LongSupplier input, LongConsumer output) {
+        while (true) {
+            switch (run()) {
+                case NEEDS_INPUT:
+                    addInput(Profiler.ENABLED && profiler != null ? profiledInput(input) : input.getAsLong());
+                    break;
+                case OUTPUT:
+                    output.accept(this.output);
+                    break;
+                case HALTED:
+                    return;
+            }
+        }
+    }
+
+    public RunResult execute(ComputerListener listener, RunLimits limits) {
+        return execute(() -> Long.parseLong(listener.onReadRequested()),
+                value -> listener.onStoreRequested(String.valueOf(value)), limits);
+    }
+
+    // a machine stopped by its limits keeps its state, so it can be resumed with another call or simply dropped
+    public RunResult execute(LongSupplier input, LongConsumer output, RunLimits limits) {
+        long start = System.nanoTime();
+        long first = executed;
+        long budgetEnd = limits.instructions() > Long.MAX_VALUE - executed ? Long.MAX_VALUE : executed + limits.instructions();
+        while (true) {
+            if (limits.isCancelled()) {
+                return new RunResult(RunResult.Outcome.CANCELLED, executed - first, System.nanoTime() - start);
+            }
+            if (limits.hasDeadline() && System.nanoTime() - start >= limits.deadlineNanos()) {
+                return new RunResult(RunResult.Outcome.DEADLINE_EXCEEDED, executed - first, System.nanoTime() - start);
+            }
+            if (executed >= budgetEnd) {
+                return new RunResult(RunResult.Outcome.OUT_OF_INSTRUCTIONS, executed - first, System.nanoTime() - start);
+            }
+            switch (run(Math.min(budgetEnd - executed, limits.checkInterval()))) {
+                case NEEDS_INPUT:
+                    addInput(Profiler.ENABLED && profiler != null ? profiledInput(input) : input.getAsLong());
+                    break;
+                case OUTPUT:
+                    output.accept(this.output);
+                    break;
+                case HALTED:
+                    return new RunResult(RunResult.Outcome.HALTED, executed - first, System.nanoTime() - start);
+                case YIELDED:
+                    break;
+            }
+        }
+    }
+
+    private long profiledInput(LongSupplier input) {
+        long start = System.nanoTime();
+        long value = input.getAsLong();
+        profiler.blocked(System.nanoTime() - start);
+        return value;
+    }
+
+    public State run() {
+        sliceEnd = Long.MAX_VALUE;
+        return dispatch();
+    }
+
+    public State run(long instructions) {
+        if (instructions <= 0) {
+            throw new IllegalArgumentException("Time slice must be positive: " + instructions);
+        }
+        sliceEnd = instructions > Long.MAX_VALUE - executed ? Long.MAX_VALUE : executed + instructions;
+        return dispatch();
+    }
+
+    private State dispatch() {
+        if (tracer != null) return traced();
+        if (Profiler.ENABLED && profiler != null) return profiled();
+        return interpret();
+    }
+
+    private State profiled() {
+        long start = System.nanoTime();
+        State state = interpret();
+        profiler.running(System.nanoTime() - start);
+        return state;
+    }
+
+    private State traced() {
+        try {
+            State state = Profiler.ENABLED && profiler != null ? profiled() : interpret();
+            if (state == State.HALTED) tracer.halted();
+            return state;
+        } catch (RuntimeException e) {
+            tracer.failed(e);
+            throw e;
+        }
+    }
+
+    private State interpret() {
+        while (instructionPointer < programLength) {
+            if (executed >= sliceEnd) return State.YIELDED;
+            if (compiledBlocks != null && instructionPointer >= 0 && tracer == null && (!Profiler.ENABLED || profiler == null)) {
+                BlockCompiler.Block block = compiledBlocks[(int) instructionPointer];
+                // a block runs to its end, so it is only entered when the slice has room for all of it
+                if (block != null && sliceEnd - executed >= block.instructions) {
+                    long rewrites = codeRewrites;
+                    instructionPointer = block.code.execute(this);
+                    executed += rewrites == codeRewrites ? block.instructions : block.executedUntil(instructionPointer);
+                    continue;
+                }
+            }
+            if (peephole != null && instructionPointer >= 0 && tracer == null && (!Profiler.ENABLED || profiler == null)) {
+                int start = (int) instructionPointer;
+                byte kind = peephole.kinds[start];
+                // a superinstruction may run two instructions
+                if (kind != Peephole.NONE && sliceEnd - executed >= 2) {
+                    executed += executeFused(start, kind);
+                    continue;
+                }
+            }
+            long instruction = get(instructionPointer);
+            int modes = (int) (instruction / 100);
+            int operation = (int) (instruction % 100);
+            if (operation == SAVE_OPERATION && inputHead == inputTail) return State.NEEDS_INPUT;
+            executed++;
+            if (Profiler.ENABLED && profiler != null) profiler.instruction(instructionPointer, operation);
+            if (tracer != null) tracer.instruction(instructionPointer, instruction);
+            switch (operation) {
+                case SUM_OPERATION:
+                    write(3, modes / 100, read(1, modes % 10) + read(2, modes / 10 % 10));
+                    instructionPointer += 4;
+                    break;
+                case MULTIPLY_OPERATION:
+                    write(3, modes / 100, read(1, modes % 10) * read(2, modes / 10 % 10));
+                    instructionPointer += 4;
+                    break;
+                case SAVE_OPERATION:
+                    write(1, modes % 10, inputs[inputHead++ & (inputs.length - 1)]);
+                    instructionPointer += 2;
+                    break;
+                case READ_OPERATION:
+                    output = read(1, modes % 10);
+                    if (tracer != null) tracer.result(output);
+                    instructionPointer += 2;
+                    return State.OUTPUT;
+                case JUMP_IF_TRUE:
+                    instructionPointer = read(1, modes % 10) != 0
+                            ? read(2, modes / 10 % 10)
+                            : instructionPointer + 3;
+                    if (tracer != null) tracer.result(instructionPointer);
+                    if (compiler != null) countBlockEntry();
+                    break;
+                case JUMP_IF_FALSE:
+                    instructionPointer = read(1, modes % 10) == 0
+                            ? read(2, modes / 10 % 10)
+                            : instructionPointer + 3;
+                    if (tracer != null) tracer.result(instructionPointer);
+                    if (compiler != null) countBlockEntry();
+                    break;
+                case LESS_OPERATION:
+                    write(3, modes / 100, read(1, modes % 10) < read(2, modes / 10 % 10) ? 1 : 0);
+                    instructionPointer += 4;
+                    break;
+                case EQUAL_OPERATION:
+                    write(3, modes / 100, read(1, modes % 10) == read(2, modes / 10 % 10) ? 1 : 0);
+                    instructionPointer += 4;
+                    break;
+                case ADJUST_RELATIVE_BASE_OPERATION:
+                    adjustRelativeBase(read(1, modes % 10));
+                    if (tracer != null) tracer.result(relativeBase);
+                    instructionPointer += 2;
+                    break;
+                case STOP_OPERATION:
+                    instructionPointer = programLength;
+                    return State.HALTED;
+                default:
+                    throw new RuntimeException("Not Supported Operation!" + instruction);
+            }
+        }
+        return State.HALTED;
+    }
+
+    private int executeFused(int start, byte kind) {
+        int first = peephole.firstInstructions[start];
+        int modes = first / 100;
+        switch (kind) {
+            case Peephole.COMPARE_JUMP:
+                long left = read(1, modes % 10);
+                long right = read(2, modes / 10 % 10);
+                boolean overwritten = write(3, modes / 100, (first % 100 == LESS_OPERATION ? left < right : left == right) ? 1 : 0);
+                instructionPointer += 4;
+                if (overwritten) return 1;
+                int jump = peephole.secondInstructions[start];
+                int jumpModes = jump / 100;
+                boolean condition = read(1, jumpModes % 10) != 0;
+                instructionPointer = condition == (jump % 100 == JUMP_IF_TRUE)
+                        ? read(2, jumpModes / 10 % 10)
+                        : instructionPointer + 3;
+                if (compiler != null) countBlockEntry();
+                return 2;
+            case Peephole.ADD_IMMEDIATE:
+                boolean immediateFirst = modes % 10 == 1;
+                long increment = get(instructionPointer + (immediateFirst ? 1 : 2));
+                long address = address(3, modes / 100);
+                store(address, get(address) + increment);
+                instructionPointer += 4;
+                return 1;
+            case Peephole.BASE_STORE:
+                relativeBase += get(instructionPointer + 1);
+                instructionPointer += 2;
+                int store = peephole.secondInstructions[start];
+                int storeModes = store / 100;
+                long a = read(1, storeModes % 10);
+                long b = read(2, storeModes / 10 % 10);
+                write(3, RELATIVE_MODE, combine(store % 100, a, b));
+                instructionPointer += 4;
+                return 2;
+            default:
+                throw new IllegalStateException("Unknown superinstruction " + kind);
+        }
+    }
+
+    private static long combine(int operation, long a, long b) {
+        switch (operation) {
+            case SUM_OPERATION:
+                return a + b;
+            case MULTIPLY_OPERATION:
+                return a * b;
+            case LESS_OPERATION:
+                return a < b ? 1 : 0;
+            default:
+                return a == b ? 1 : 0;
+        }
+    }
+
+    public void addInput(long value) {
+        if (inputTail - inputHead == inputs.length) {
+            long[] grown = new long[inputs.length * 2];
+            for (int i = inputHead; i != inputTail; i++) {
+                grown[i - inputHead] = inputs[i & (inputs.length - 1)];
+            }
+            inputTail -= inputHead;
+            inputHead = 0;
+            inputs = grown;
+        }
+        inputs[inputTail++ & (inputs.length - 1)] = value;
+    }
+
+    public boolean hasPendingInput() {
+        return inputHead != inputTail;
+    }
+
+    public long output() {
+        return output;
+    }
+
+    public boolean halted() {
+        return instructionPointer >= programLength;
+    }
+
+    private long read(int parameter, int mode) {
+        if (Profiler.ENABLED && profiler != null) profiler.read(mode);
+        long value = get(instructionPointer + parameter);
+        if (mode == POSITION_MODE) value = get(value);
+        else if (mode == RELATIVE_MODE) value = get(relativeBase + value);
+        if (tracer != null) tracer.operand(value);
+        return value;
+    }
+
+    private boolean write(int parameter, int mode, long value) {
+        if (Profiler.ENABLED && profiler != null) profiler.write(mode == RELATIVE_MODE ? RELATIVE_MODE : POSITION_MODE);
+        if (tracer != null) tracer.result(value);
+        return store(address(parameter, mode), value);
+    }
+
+    private long address(int parameter, int mode) {
+        long address = get(instructionPointer + parameter);
+        return mode == RELATIVE_MODE ? relativeBase + address : address;
+    }
+
+    boolean store(long address, long value) {
+        memory.set(address, value);
+        boolean unfused = peephole != null && peephole.guard(address);
+        if (compiledCoverage == null || address < 0 || address >= programLength || compiledCoverage[(int) address] == 0) {
+            if (unfused) codeRewrites++;
+            return unfused;
+        }
+        deoptimize(address);
+        codeRewrites++;
+        return true;
+    }
+
+    void adjustRelativeBase(long offset) {
+        relativeBase += offset;
+    }
+
+    private void countBlockEntry() {
+        if (instructionPointer < 0 || instructionPointer >= programLength) return;
+        int start = (int) instructionPointer;
+        if (compiledBlocks[start] != null || blockCounters[start] == NEVER_COMPILE) return;
+        if (++blockCounters[start] < COMPILE_THRESHOLD) return;
+
+        BlockCompiler.Block block = compiler.compile(this, start, programLength);
+        if (block == null) {
+            blockCounters[start] = NEVER_COMPILE;
+            return;
+        }
+        blocks.add(block);
+        compiledBlocks[start] = block;
+        for (long address = block.start; address < block.end; address++) {
+            compiledCoverage[(int) address]++;
+        }
+    }
+
+    private void deoptimize(long address) {
+        blocks.removeIf(block -> {
+            if (address < block.start || address >= block.end) return false;
+            int start = (int) block.start;
+            compiledBlocks[start] = null;
+            blockCounters[start] = ++deoptimizations[start] < MAX_DEOPTIMIZATIONS ? 0 : NEVER_COMPILE;
+            for (long covered = block.start; covered < block.end; covered++) {
+                compiledCoverage[(int) covered]--;
+            }
+            return true;
+        });
+    }
+
+    public long get(long address) {
+        return memory.get(address);
+    }
+
+    public void set(long address, long value) {
+        store(address, value);
+    }
+
+    public PagedMemory memory() {
+        return memory;
+    }
+
+    public int compiledBlocks() {
+        return blocks.size();
+    }
+
+    ClassLoader blockLoader() {
+        return compiler == null ? null : compiler.loader();
+    }
+
+    public int superinstructions() {
+        return peephole == null ? 0 : peephole.fused();
+    }
+
+    public long instructionsExecuted() {
+        return executed;
+    }
+
+    public long instructionPointer() {
+        return instructionPointer;
+    }
+
+    public long relativeBase() {
+        return relativeBase;
+    }
+}
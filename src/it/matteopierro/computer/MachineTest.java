@@ -0,0 +1,384 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MachineTest {
+
+    private static final String SELF_MODIFYING_LOOP = "1001,25,-1,25,1001,26,1,26,1008,25,1000,27,1006,27,19,1101,0,5,6,1005,25,0,4,26,99,3000,0,0";
+
+    @Test
+    void executeTheSameProgramsAsComputer() throws IOException {
+        String program = Files.readString(Paths.get("./input_day9"));
+
+        assertThat(new LongComputer().execute(program, "1")).containsExactly("3906448201");
+        assertThat(new LongComputer().execute("109,1,204,-1,1001,100,1,100,1008,100,16,101,1006,101,0,99"))
+                .containsExactly("109", "1", "204", "-1", "1001", "100", "1", "100", "1008", "100", "16", "101", "1006", "101", "0", "99");
+    }
+
+    @Test
+    void keepTheRelativeBase() {
+        Machine machine = Machine.of("109,1,204,-1,1001,100,1,100,1008,100,16,101,99");
+        ComputerListener listener = new ComputerListener();
+
+        machine.execute(listener);
+
+        assertThat(machine.relativeBase()).isEqualTo(1L);
+        assertThat(listener.results()).containsExactly("109");
+        assertThat(machine.get(100)).isEqualTo(1L);
+        assertThat(machine.get(101)).isEqualTo(0L);
+    }
+
+    @Test
+    void compileHotLoops() {
+        Machine machine = Machine.of("1001,8,-1,8,1005,8,0,99,5000").tiered();
+
+        machine.execute(new ComputerListener());
+
+        assertThat(machine.get(8)).isEqualTo(0L);
+        assertThat(machine.compiledBlocks()).isEqualTo(1);
+    }
+
+    @Test
+    void unloadCompiledBlocksWithTheirImage() throws InterruptedException {
+        Machine machine = new Machine(new long[]{1001, 8, -1, 8, 1005, 8, 0, 99, 5000}).tiered();
+        machine.execute(new ComputerListener());
+        WeakReference<ClassLoader> loader = new WeakReference<>(machine.blockLoader());
+
+        machine = null;
+        for (int attempt = 0; attempt < 10 && loader.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(loader.get()).isNull();
+    }
+
+    @Test
+    void countTheSameInstructionsWhenTiered() {
+        Machine interpreted = Machine.of("1001,8,-1,8,1005,8,0,99,5000");
+        Machine tiered = Machine.of("1001,8,-1,8,1005,8,0,99,5000").tiered();
+
+        interpreted.execute(new ComputerListener());
+        tiered.execute(new ComputerListener());
+
+        assertThat(tiered.compiledBlocks()).isEqualTo(1);
+        assertThat(tiered.instructionsExecuted()).isEqualTo(interpreted.instructionsExecuted());
+    }
+
+    @Test
+    void countTheInstructionsOfABlockLeftEarly() {
+        String rewritesItsFirstInstruction = "1001,13,-1,13,1101,1001,0,0,1005,13,0,99,0,20000";
+        Machine interpreted = Machine.of(rewritesItsFirstInstruction);
+        Machine tiered = Machine.of(rewritesItsFirstInstruction).tiered();
+
+        interpreted.execute(new ComputerListener());
+        tiered.execute(new ComputerListener());
+
+        assertThat(interpreted.instructionsExecuted()).isEqualTo(60_001L);
+        assertThat(tiered.instructionsExecuted()).isEqualTo(interpreted.instructionsExecuted());
+    }
+
+    @Test
+    void stopCompiledCodeAtTheEndOfTheSlice() {
+        Machine interpreted = Machine.of("1001,8,-1,8,1005,8,0,99,5000");
+        Machine tiered = Machine.of("1001,8,-1,8,1005,8,0,99,5000").tiered().fused();
+        interpreted.run(3_500);
+        tiered.run(3_500);
+
+        for (int slice = 1; slice <= 4; slice++) {
+            interpreted.run(slice);
+            tiered.run(slice);
+
+            assertThat(tiered.compiledBlocks()).isEqualTo(1);
+            assertThat(tiered.instructionsExecuted()).isEqualTo(interpreted.instructionsExecuted());
+            assertThat(tiered.instructionPointer()).isEqualTo(interpreted.instructionPointer());
+        }
+    }
+
+    @Test
+    void yieldFromACompiledJumpOnlyLoop() {
+        Machine interpreted = Machine.of("1105,1,0");
+        Machine tiered = Machine.of("1105,1,0").tiered();
+
+        assertThat(interpreted.run(100_000)).isEqualTo(Machine.State.YIELDED);
+        assertThat(tiered.run(100_000)).isEqualTo(Machine.State.YIELDED);
+        assertThat(tiered.compiledBlocks()).isEqualTo(1);
+        assertThat(tiered.instructionsExecuted()).isEqualTo(interpreted.instructionsExecuted());
+    }
+
+    @Test
+    void deoptimizeCompiledBlocksWhenTheirCodeIsOverwritten() {
+        assertThat(new LongComputer().execute(SELF_MODIFYING_LOOP)).containsExactly("7000");
+        assertThat(LongComputer.tiered().execute(SELF_MODIFYING_LOOP)).containsExactly("7000");
+        assertThat(LongComputer.tiered().execute(SELF_MODIFYING_LOOP)).containsExactly("7000");
+    }
+
+    @Test
+    void fuseRecurringInstructionPairs() {
+        Machine machine = Machine.of(SELF_MODIFYING_LOOP).fused();
+
+        assertThat(machine.superinstructions()).isEqualTo(3);
+    }
+
+    @Test
+    void executeRealProgramsWithSuperinstructions() throws IOException {
+        ProgramImage day5 = ProgramImage.load(Paths.get("./input_day5"));
+        ProgramImage day9 = ProgramImage.load(Paths.get("./input_day9"));
+        OutputBuffer outputs = new OutputBuffer(1);
+
+        day5.newMachine().fused().execute(() -> 5, outputs);
+        assertThat(outputs.last()).isEqualTo(3508186L);
+        day9.newMachine().fused().execute(() -> 1, outputs);
+        assertThat(outputs.last()).isEqualTo(3906448201L);
+    }
+
+    @Test
+    void deoptimizeSuperinstructionsWhenTheirCodeIsOverwritten() {
+        Machine machine = Machine.of(SELF_MODIFYING_LOOP).fused();
+        OutputBuffer outputs = new OutputBuffer(1);
+
+        machine.execute(() -> 0, outputs);
+
+        assertThat(outputs.last()).isEqualTo(7000L);
+        assertThat(machine.superinstructions()).isEqualTo(2);
+    }
+
+    @Test
+    void yieldOnInputAndOutput() {
+        Machine machine = Machine.of("3,9,1001,9,1,9,4,9,99,0");
+
+        assertThat(machine.run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        assertThat(machine.run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        machine.addInput(41);
+        assertThat(machine.run()).isEqualTo(Machine.State.OUTPUT);
+        assertThat(machine.output()).isEqualTo(42L);
+        assertThat(machine.run()).isEqualTo(Machine.State.HALTED);
+        assertThat(machine.halted()).isTrue();
+    }
+
+    @Test
+    void yieldWhenTheTimeSliceIsOver() {
+        Machine machine = Machine.of("1101,0,0,9,1001,9,1,9,1105,1,4,99");
+
+        assertThat(machine.run(10)).isEqualTo(Machine.State.YIELDED);
+        assertThat(machine.instructionsExecuted()).isEqualTo(10L);
+        assertThat(machine.run(7)).isEqualTo(Machine.State.YIELDED);
+        assertThat(machine.instructionsExecuted()).isEqualTo(17L);
+        assertThat(machine.get(9)).isEqualTo(8L);
+    }
+
+    @Test
+    void driveManyMachinesFromOneThread() {
+        Machine[] machines = new Machine[1000];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = Machine.of("3,9,1001,9,1,9,4,9,99,0");
+            assertThat(machines[i].run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        }
+
+        long sum = 0;
+        for (int i = 0; i < machines.length; i++) {
+            machines[i].addInput(i);
+            machines[i].run();
+            sum += machines[i].output();
+        }
+
+        assertThat(sum).isEqualTo(500500L);
+    }
+
+    @Test
+    void exchangePrimitiveValues() {
+        OutputBuffer outputs = new OutputBuffer(2);
+        long[] inputs = {3, 4, 5};
+        int[] next = {0};
+
+        Machine.of("3,20,3,21,3,22,4,20,4,21,4,22,99").execute(() -> inputs[next[0]++], outputs);
+
+        assertThat(outputs.count()).isEqualTo(3L);
+        assertThat(outputs.toArray()).containsExactly(4L, 5L);
+        assertThat(outputs.last()).isEqualTo(5L);
+    }
+
+    @Test
+    void discardOutputsButCountThem() {
+        OutputBuffer outputs = OutputBuffer.discarding();
+
+        Machine.of("104,1,104,2,104,3,99").execute(() -> 0, outputs);
+
+        assertThat(outputs.count()).isEqualTo(3L);
+        assertThat(outputs.size()).isEqualTo(0);
+    }
+
+    @Test
+    void resumeFromASnapshot() {
+        Machine machine = Machine.of("1101,20,22,17,3,18,1,17,18,19,4,19,99,0,0,0,0,0,0,0");
+        assertThat(machine.run()).isEqualTo(Machine.State.NEEDS_INPUT);
+        Machine.Snapshot snapshot = machine.snapshot();
+
+        machine.addInput(1);
+        machine.run();
+        Machine fork = snapshot.newMachine();
+        fork.addInput(2);
+        fork.run();
+
+        assertThat(machine.output()).isEqualTo(43L);
+        assertThat(fork.output()).isEqualTo(44L);
+        assertThat(snapshot.instructionPointer()).isEqualTo(4L);
+    }
+
+    @Test
+    void skipThePrologueOfQueryPrograms() throws IOException {
+        ProgramImage image = ProgramImage.load(Paths.get("./input_day19"));
+        Machine.Snapshot warmStart = image.warmStart();
+
+        Machine machine = warmStart.newMachine();
+        machine.addInput(0);
+        machine.addInput(0);
+        machine.run();
+
+        assertThat(warmStart.instructionPointer()).isGreaterThan(0L);
+        assertThat(machine.output()).isEqualTo(1L);
+        assertThat(image.warmStart()).isSameAs(warmStart);
+    }
+
+    @Test
+    void exploreBranchesWithForks() {
+        Machine machine = Machine.of("3,13,1001,13,1,13,4,13,1105,1,0,99,0,0");
+        machine.addInput(10);
+        machine.run();
+
+        Machine left = machine.fork();
+        Machine right = machine.fork();
+        left.addInput(100);
+        right.addInput(200);
+        left.run();
+        right.run();
+
+        assertThat(machine.output()).isEqualTo(11L);
+        assertThat(left.output()).isEqualTo(101L);
+        assertThat(right.output()).isEqualTo(201L);
+        assertThat(machine.get(13)).isEqualTo(11L);
+    }
+
+    @Test
+    void compareStatesOfForkedMachines() {
+        Machine machine = Machine.of("3,13,1001,13,1,13,4,13,1105,1,0,99,0,0");
+        Machine fork = machine.fork();
+        assertThat(machine.sameStateAs(fork)).isTrue();
+
+        machine.addInput(10);
+        machine.run();
+        assertThat(machine.sameStateAs(fork)).isFalse();
+
+        fork.addInput(10);
+        fork.run();
+        assertThat(machine.sameStateAs(fork)).isTrue();
+    }
+
+    @Test
+    void suspendWhenTheInstructionBudgetIsSpent() {
+        for (Machine machine : new Machine[]{Machine.of("1105,1,0"), Machine.of("1105,1,0").tiered()}) {
+            RunLimits limits = RunLimits.unlimited().instructions(1000).checkEvery(300);
+
+            RunResult first = machine.execute(() -> 0, value -> {}, limits);
+            RunResult second = machine.execute(() -> 0, value -> {}, limits);
+
+            assertThat(first.outcome()).isEqualTo(RunResult.Outcome.OUT_OF_INSTRUCTIONS);
+            assertThat(first.instructions()).isEqualTo(1000L);
+            assertThat(second.instructions()).isEqualTo(1000L);
+            assertThat(machine.instructionsExecuted()).isEqualTo(2000L);
+        }
+    }
+
+    @Test
+    void keepCompiledBlocksWithinTheInstructionBudget() {
+        String twoCounters = "1001,12,-1,12,1001,13,1,13,1005,12,0,99,1000000,0";
+        Machine machine = Machine.of(twoCounters).tiered();
+        machine.run(5_000);
+
+        RunResult result = machine.execute(() -> 0, value -> {}, RunLimits.unlimited().instructions(1000).checkEvery(7));
+
+        assertThat(machine.compiledBlocks()).isEqualTo(1);
+        assertThat(result.instructions()).isEqualTo(1000L);
+        assertThat(machine.instructionsExecuted()).isEqualTo(6000L);
+    }
+
+    @Test
+    void cancelARunBeforeItStarts() {
+        Machine machine = Machine.of("1105,1,0");
+        Cancellation cancellation = new Cancellation();
+        cancellation.cancel();
+
+        RunResult result = machine.execute(() -> 0, value -> {}, RunLimits.unlimited().cancelledBy(cancellation));
+
+        assertThat(result.outcome()).isEqualTo(RunResult.Outcome.CANCELLED);
+        assertThat(result.instructions()).isEqualTo(0L);
+    }
+
+    @Test
+    void cancelOnlyTheRunTheCancellationWasGivenTo() {
+        Machine machine = Machine.of("1105,1,0");
+        Cancellation cancellation = new Cancellation();
+        cancellation.cancel();
+        machine.execute(() -> 0, value -> {}, RunLimits.unlimited().cancelledBy(cancellation));
+
+        RunResult result = machine.execute(() -> 0, value -> {}, RunLimits.unlimited().instructions(1000));
+
+        assertThat(result.outcome()).isEqualTo(RunResult.Outcome.OUT_OF_INSTRUCTIONS);
+    }
+
+    @Test
+    void stopAtTheDeadline() {
+        Machine machine = Machine.of("1105,1,0");
+
+        RunResult result = machine.execute(() -> 0, value -> {}, RunLimits.unlimited().deadline(Duration.ofMillis(50)));
+
+        assertThat(result.outcome()).isEqualTo(RunResult.Outcome.DEADLINE_EXCEEDED);
+        assertThat(result.elapsedNanos()).isGreaterThanOrEqualTo(50_000_000L);
+        assertThat(result.instructions()).isEqualTo(machine.instructionsExecuted());
+    }
+
+    @Test
+    void cancelFromAWatchdogThread() throws InterruptedException {
+        Machine machine = Machine.of("1105,1,0");
+        Cancellation cancellation = new Cancellation();
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancellation.cancel();
+        });
+        watchdog.start();
+
+        // the deadline only ends the test should the cancellation never be seen
+        RunLimits limits = RunLimits.unlimited().cancelledBy(cancellation).deadline(Duration.ofSeconds(10));
+        RunResult result = machine.execute(() -> 0, value -> {}, limits);
+        watchdog.join();
+
+        assertThat(result.outcome()).isEqualTo(RunResult.Outcome.CANCELLED);
+        assertThat(result.instructions()).isGreaterThan(0L);
+    }
+
+    @Test
+    void reportTheInstructionsOfAHaltedRun() {
+        Machine machine = Machine.of("3,9,1002,9,2,9,4,9,99,0");
+        List<Long> outputs = new ArrayList<>();
+
+        RunResult result = machine.execute(() -> 21, outputs::add, RunLimits.unlimited().instructions(100));
+
+        assertThat(result.halted()).isTrue();
+        assertThat(result.instructions()).isEqualTo(4L);
+        assertThat(outputs).containsExactly(42L);
+    }
+}
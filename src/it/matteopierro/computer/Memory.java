@@ -1,29 +1,54 @@
 package it.matteopierro.computer;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Memory {
     private final String[] instructions;
-    private final Map<Integer, String> extraMemory = new HashMap<>();
-    private int relativeBase = 0;
+    private final Computer.Operation[] decodedOperations;
+    private final int[] decodes;
+    private ComputerListener decodedFor;
+    private final PagedMemory extraMemory = new PagedMemory();
+    private long relativeBase = 0;
 
     public Memory(String[] instructions) {
         this.instructions = instructions;
+        this.decodedOperations = new Computer.Operation[instructions.length];
+        this.decodes = new int[instructions.length];
     }
 
-    public void set(int address, String value) {
+    public void set(long address, String value) {
         if (address < instructions.length) {
-            instructions[address] = value;
+            instructions[(int) address] = value;
+            decodedOperations[(int) address] = null;
             return;
         }
-        extraMemory.put(address, value);
+        extraMemory.set(address, Long.parseLong(value));
     }
 
-    public String get(Integer address) {
+    public String get(long address) {
         if (address < instructions.length)
-            return instructions[address];
-        return extraMemory.getOrDefault(address, "0");
+            return instructions[(int) address];
+        return String.valueOf(extraMemory.get(address));
+    }
+
+    void decodeFor(ComputerListener listener) {
+        if (decodedFor != listener) {
+            Arrays.fill(decodedOperations, null);
+            decodedFor = listener;
+        }
+    }
+
+    Computer.Operation decodedOperation(int address) {
+        return decodedOperations[address];
+    }
+
+    void cacheDecodedOperation(int address, Computer.Operation operation) {
+        decodedOperations[address] = operation;
+        decodes[address]++;
+    }
+
+    int decodes(int address) {
+        return decodes[address];
     }
 
     public int instructionLength() {
@@ -31,18 +56,18 @@ public class Memory {
     }
 
     public void addRelativeOffset(Long offset) {
-        relativeBase += (int) (long) offset;
+        relativeBase += offset;
     }
 
-    public String getRelative(int offset) {
+    public String getRelative(long offset) {
         return this.get(relativeBase + offset);
     }
 
-    public void setRelative(int offset, String value) {
+    public void setRelative(long offset, String value) {
         this.set(relativeBase + offset, value);
     }
 
-    public int relativeBase() {
+    public long relativeBase() {
         return relativeBase;
     }
 }
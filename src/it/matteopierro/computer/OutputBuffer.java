@@ -0,0 +1,51 @@
+package it.matteopierro.computer;
+
+import java.util.function.LongConsumer;
+
+public class OutputBuffer implements LongConsumer {
+    private final long[] values;
+    private long count = 0;
+
+    public OutputBuffer(int capacity) {
+        this.values = new long[capacity];
+    }
+
+    public static OutputBuffer discarding() {
+        return new OutputBuffer(0);
+    }
+
+    @Override
+    public void accept(long value) {
+        if (values.length > 0) {
+            values[(int) (count % values.length)] = value;
+        }
+        count++;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.min(count, values.length);
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size() + " retained outputs");
+        }
+        return values[(int) ((count - size() + index) % values.length)];
+    }
+
+    public long last() {
+        return get(size() - 1);
+    }
+
+    public long[] toArray() {
+        long[] retained = new long[size()];
+        for (int i = 0; i < retained.length; i++) {
+            retained[i] = get(i);
+        }
+        return retained;
+    }
+}
@@ -0,0 +1,387 @@
+package it.matteopierro.computer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class PagedMemory {
+    static final int PAGE_BITS = 10;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+    private static final int DIRECTORY_LIMIT = 1 << 16;
+    private static final long NO_PAGE = -1;
+
+    private long[][] directory = new long[16][];
+    private boolean[] directoryShared = new boolean[16];
+    // writable pages are private and already marked dirty in this epoch, so writes to them take the fast path
+    private boolean[] directoryWritable = new boolean[16];
+    private BitSet directoryDirty = new BitSet();
+    private long[] farPageNumbers = new long[0];
+    private long[][] farPages = new long[0][];
+    private boolean[] farShared = new boolean[0];
+    private boolean[] farWritable = new boolean[0];
+    private boolean[] farDirty = new boolean[0];
+    private int farPageCount = 0;
+    private int pagesTouched = 0;
+    private long epoch = 0;
+
+    public PagedMemory() {
+    }
+
+    public PagedMemory(long[] image) {
+        for (int start = 0; start < image.length; start += PAGE_SIZE) {
+            long[] page = pageForWrite(start);
+            System.arraycopy(image, start, page, 0, Math.min(PAGE_SIZE, image.length - start));
+        }
+    }
+
+    public PagedMemory(ProgramImage image) {
+        load(image);
+    }
+
+    public void load(ProgramImage image) {
+        clear();
+        for (int start = 0; start < image.length(); start += PAGE_SIZE) {
+            image.copyTo(pageForWrite(start), start, 0, Math.min(PAGE_SIZE, image.length() - start));
+        }
+    }
+
+    public void load(PagedMemory source) {
+        clear();
+        for (int pageNumber = 0; pageNumber < source.directory.length; pageNumber++) {
+            if (source.directory[pageNumber] != null) {
+                System.arraycopy(source.directory[pageNumber], 0, pageForWrite((long) pageNumber << PAGE_BITS), 0, PAGE_SIZE);
+            }
+        }
+        for (int slot = 0; slot < source.farPages.length; slot++) {
+            if (source.farPages[slot] != null) {
+                System.arraycopy(source.farPages[slot], 0, pageForWrite(source.farPageNumbers[slot] << PAGE_BITS), 0, PAGE_SIZE);
+            }
+        }
+    }
+
+    public PagedMemory fork() {
+        share();
+        PagedMemory fork = new PagedMemory();
+        fork.directory = directory.clone();
+        fork.directoryShared = directoryShared.clone();
+        fork.directoryWritable = new boolean[directory.length];
+        fork.directoryDirty = (BitSet) directoryDirty.clone();
+        fork.farPageNumbers = farPageNumbers.clone();
+        fork.farPages = farPages.clone();
+        fork.farShared = farShared.clone();
+        fork.farWritable = new boolean[farPages.length];
+        fork.farDirty = farDirty.clone();
+        fork.farPageCount = farPageCount;
+        fork.epoch = epoch;
+        return fork;
+    }
+
+    // takes the pages of the snapshot copy-on-write; only pages that differ from the current ones become dirty
+    public void restore(PagedMemory snapshot) {
+        snapshot.share();
+        long[][] oldDirectory = directory;
+        BitSet oldDirty = directoryDirty;
+        int length = Math.max(directory.length, snapshot.directory.length);
+        directory = Arrays.copyOf(snapshot.directory, length);
+        directoryShared = Arrays.copyOf(snapshot.directoryShared, length);
+        directoryWritable = new boolean[length];
+        directoryDirty = new BitSet();
+        for (int pageNumber = 0; pageNumber < length; pageNumber++) {
+            long[] old = pageNumber < oldDirectory.length ? oldDirectory[pageNumber] : null;
+            if (directory[pageNumber] == old) {
+                if (oldDirty.get(pageNumber)) directoryDirty.set(pageNumber);
+            } else if (directory[pageNumber] == null) {
+                writableDirectoryPage(pageNumber);
+            } else {
+                directoryDirty.set(pageNumber);
+            }
+        }
+
+        long[] oldFarNumbers = farPageNumbers;
+        long[][] oldFarPages = farPages;
+        boolean[] oldFarDirty = farDirty;
+        farPageNumbers = snapshot.farPageNumbers.clone();
+        farPages = snapshot.farPages.clone();
+        farShared = snapshot.farShared.clone();
+        farWritable = new boolean[farPages.length];
+        farDirty = new boolean[farPages.length];
+        farPageCount = snapshot.farPageCount;
+        for (int slot = 0; slot < farPages.length; slot++) {
+            farDirty[slot] = farPages[slot] != null;
+        }
+        for (int i = 0; i < oldFarPages.length; i++) {
+            if (oldFarPages[i] == null) continue;
+            int slot = farSlot(oldFarNumbers[i]);
+            if (slot < 0) {
+                pageForWrite(oldFarNumbers[i] << PAGE_BITS);
+            } else if (farPages[slot] == oldFarPages[i]) {
+                farDirty[slot] = oldFarDirty[i];
+            }
+        }
+    }
+
+    private void share() {
+        markShared(directory, directoryShared);
+        markShared(farPages, farShared);
+        Arrays.fill(directoryWritable, false);
+        Arrays.fill(farWritable, false);
+    }
+
+    private static void markShared(long[][] pages, boolean[] shared) {
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null && !shared[i]) shared[i] = true;
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < directory.length; i++) {
+            if (directory[i] == null) continue;
+            clear(directory, directoryShared, i);
+            directoryWritable[i] = true;
+            directoryDirty.set(i);
+        }
+        for (int slot = 0; slot < farPages.length; slot++) {
+            if (farPages[slot] == null) continue;
+            clear(farPages, farShared, slot);
+            farWritable[slot] = true;
+            farDirty[slot] = true;
+        }
+    }
+
+    private void clear(long[][] pages, boolean[] shared, int i) {
+        if (shared[i]) {
+            pages[i] = newPage();
+            shared[i] = false;
+        } else {
+            Arrays.fill(pages[i], 0);
+        }
+    }
+
+    public long get(long address) {
+        long[] page = page(address >>> PAGE_BITS);
+        return page == null ? 0 : page[(int) address & OFFSET_MASK];
+    }
+
+    public void set(long address, long value) {
+        pageForWrite(address)[(int) address & OFFSET_MASK] = value;
+    }
+
+    interface PageVisitor {
+        void visit(long pageNumber, long[] page);
+    }
+
+    void forEachPage(PageVisitor visitor) {
+        for (int pageNumber = 0; pageNumber < directory.length; pageNumber++) {
+            if (directory[pageNumber] != null) visitor.visit(pageNumber, directory[pageNumber]);
+        }
+        for (int slot = 0; slot < farPages.length; slot++) {
+            if (farPages[slot] != null) visitor.visit(farPageNumbers[slot], farPages[slot]);
+        }
+    }
+
+    long[] page(long pageNumber) {
+        return pageNumber < directory.length ? directory[(int) pageNumber] : farPage(pageNumber);
+    }
+
+    void writePage(long pageNumber, long[] values) {
+        System.arraycopy(values, 0, pageForWrite(pageNumber << PAGE_BITS), 0, PAGE_SIZE);
+    }
+
+    void forEachDirtyPage(PageVisitor visitor) {
+        for (int pageNumber = directoryDirty.nextSetBit(0); pageNumber >= 0; pageNumber = directoryDirty.nextSetBit(pageNumber + 1)) {
+            visitor.visit(pageNumber, directory[pageNumber]);
+        }
+        for (int slot = 0; slot < farPages.length; slot++) {
+            if (farDirty[slot]) visitor.visit(farPageNumbers[slot], farPages[slot]);
+        }
+    }
+
+    public void newEpoch() {
+        for (int pageNumber = directoryDirty.nextSetBit(0); pageNumber >= 0; pageNumber = directoryDirty.nextSetBit(pageNumber + 1)) {
+            directoryWritable[pageNumber] = false;
+        }
+        directoryDirty.clear();
+        Arrays.fill(farWritable, false);
+        Arrays.fill(farDirty, false);
+        epoch++;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public boolean isDirty(long pageNumber) {
+        if (pageNumber >= 0 && pageNumber < directory.length) return directoryDirty.get((int) pageNumber);
+        int slot = farSlot(pageNumber);
+        return slot >= 0 && farDirty[slot];
+    }
+
+    public int dirtyPages() {
+        int dirty = directoryDirty.cardinality();
+        for (boolean page : farDirty) {
+            if (page) dirty++;
+        }
+        return dirty;
+    }
+
+    public boolean contentEquals(PagedMemory other) {
+        return other == this || (covers(other) && other.covers(this));
+    }
+
+    // pages shared with the other memory are equal by construction, only the ones written since the fork are compared
+    private boolean covers(PagedMemory other) {
+        for (int pageNumber = 0; pageNumber < directory.length; pageNumber++) {
+            if (!samePage(directory[pageNumber], other.page(pageNumber))) return false;
+        }
+        for (int slot = 0; slot < farPages.length; slot++) {
+            if (farPages[slot] != null && !samePage(farPages[slot], other.page(farPageNumbers[slot]))) return false;
+        }
+        return true;
+    }
+
+    private static boolean samePage(long[] page, long[] other) {
+        if (page == other) return true;
+        if (page == null) return isZero(other);
+        if (other == null) return isZero(page);
+        return Arrays.equals(page, other);
+    }
+
+    private static boolean isZero(long[] page) {
+        for (long value : page) {
+            if (value != 0) return false;
+        }
+        return true;
+    }
+
+    // pages this memory allocated itself: pages it shares with a fork are counted where they were allocated
+    public int pagesTouched() {
+        return pagesTouched;
+    }
+
+    public long residentBytes() {
+        return (long) pagesTouched * PAGE_SIZE * Long.BYTES;
+    }
+
+    public int sharedPages() {
+        return count(directory, directoryShared) + count(farPages, farShared);
+    }
+
+    private static int count(long[][] pages, boolean[] shared) {
+        int count = 0;
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null && shared[i]) count++;
+        }
+        return count;
+    }
+
+    private long[] pageForWrite(long address) {
+        long pageNumber = address >>> PAGE_BITS;
+        if (pageNumber < directory.length) {
+            int index = (int) pageNumber;
+            if (directoryWritable[index]) return directory[index];
+            return writableDirectoryPage(index);
+        }
+        if (pageNumber < DIRECTORY_LIMIT) {
+            int length = (int) Math.min(DIRECTORY_LIMIT, Math.max(pageNumber + 1, directory.length * 2L));
+            directory = Arrays.copyOf(directory, length);
+            directoryShared = Arrays.copyOf(directoryShared, length);
+            directoryWritable = Arrays.copyOf(directoryWritable, length);
+            return writableDirectoryPage((int) pageNumber);
+        }
+        int slot = farSlot(pageNumber);
+        if (slot < 0) slot = addFarPage(pageNumber);
+        if (farWritable[slot]) return farPages[slot];
+        return writableFarPage(slot);
+    }
+
+    private long[] writableDirectoryPage(int index) {
+        long[] page = directory[index];
+        if (page == null) {
+            page = directory[index] = newPage();
+        } else if (directoryShared[index]) {
+            directoryShared[index] = false;
+            page = directory[index] = copyOf(page);
+        }
+        directoryWritable[index] = true;
+        directoryDirty.set(index);
+        return page;
+    }
+
+    private long[] writableFarPage(int slot) {
+        if (farShared[slot]) {
+            farShared[slot] = false;
+            farPages[slot] = copyOf(farPages[slot]);
+        }
+        farWritable[slot] = true;
+        farDirty[slot] = true;
+        return farPages[slot];
+    }
+
+    private long[] newPage() {
+        pagesTouched++;
+        return new long[PAGE_SIZE];
+    }
+
+    private long[] copyOf(long[] page) {
+        pagesTouched++;
+        return page.clone();
+    }
+
+    private long[] farPage(long pageNumber) {
+        int slot = farSlot(pageNumber);
+        return slot < 0 ? null : farPages[slot];
+    }
+
+    private int farSlot(long pageNumber) {
+        if (farPageCount == 0) return -1;
+        for (int slot = slotFor(pageNumber); ; slot = (slot + 1) & (farPageNumbers.length - 1)) {
+            if (farPageNumbers[slot] == pageNumber) return slot;
+            if (farPageNumbers[slot] == NO_PAGE) return -1;
+        }
+    }
+
+    private int addFarPage(long pageNumber) {
+        if ((farPageCount + 1) * 2 > farPageNumbers.length) {
+            rehashFarPages(Math.max(8, farPageNumbers.length * 2));
+        }
+        int slot = slotFor(pageNumber);
+        while (farPageNumbers[slot] != NO_PAGE) {
+            slot = (slot + 1) & (farPageNumbers.length - 1);
+        }
+        farPageNumbers[slot] = pageNumber;
+        farPageCount++;
+        farPages[slot] = newPage();
+        return slot;
+    }
+
+    private void rehashFarPages(int capacity) {
+        long[] oldNumbers = farPageNumbers;
+        long[][] oldPages = farPages;
+        boolean[] oldShared = farShared;
+        boolean[] oldWritable = farWritable;
+        boolean[] oldDirty = farDirty;
+        farPageNumbers = new long[capacity];
+        farPages = new long[capacity][];
+        farShared = new boolean[capacity];
+        farWritable = new boolean[capacity];
+        farDirty = new boolean[capacity];
+        Arrays.fill(farPageNumbers, NO_PAGE);
+        for (int i = 0; i < oldNumbers.length; i++) {
+            if (oldNumbers[i] == NO_PAGE) continue;
+            int slot = slotFor(oldNumbers[i]);
+            while (farPageNumbers[slot] != NO_PAGE) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            farPageNumbers[slot] = oldNumbers[i];
+            farPages[slot] = oldPages[i];
+            farShared[slot] = oldShared[i];
+            farWritable[slot] = oldWritable[i];
+            farDirty[slot] = oldDirty[i];
+        }
+    }
+
+    private int slotFor(long pageNumber) {
+        long hash = pageNumber * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (farPageNumbers.length - 1);
+    }
+}
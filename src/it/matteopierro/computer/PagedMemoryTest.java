@@ -0,0 +1,194 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PagedMemoryTest {
+
+    @Test
+    void untouchedAddressesAreZero() {
+        PagedMemory memory = new PagedMemory();
+
+        assertThat(memory.get(0)).isEqualTo(0L);
+        assertThat(memory.get(Long.MAX_VALUE)).isEqualTo(0L);
+        assertThat(memory.pagesTouched()).isEqualTo(0);
+    }
+
+    @Test
+    void loadTheProgramImage() {
+        PagedMemory memory = new PagedMemory(new long[]{109, 1, 204, -1, 99});
+
+        assertThat(memory.get(2)).isEqualTo(204L);
+        assertThat(memory.get(3)).isEqualTo(-1L);
+        assertThat(memory.pagesTouched()).isEqualTo(1);
+    }
+
+    @Test
+    void allocatePagesOnFirstWrite() {
+        PagedMemory memory = new PagedMemory();
+
+        memory.set(5, 42);
+        memory.set(PagedMemory.PAGE_SIZE * 3L, 7);
+        memory.set(PagedMemory.PAGE_SIZE * 3L + 1, 8);
+
+        assertThat(memory.get(5)).isEqualTo(42L);
+        assertThat(memory.get(PagedMemory.PAGE_SIZE * 3L + 1)).isEqualTo(8L);
+        assertThat(memory.pagesTouched()).isEqualTo(2);
+        assertThat(memory.residentBytes()).isEqualTo(2L * PagedMemory.PAGE_SIZE * Long.BYTES);
+    }
+
+    @Test
+    void supportTheWholeAddressRange() {
+        PagedMemory memory = new PagedMemory();
+
+        for (long address = 1L << 40; address < (1L << 40) + 100 * PagedMemory.PAGE_SIZE; address += PagedMemory.PAGE_SIZE) {
+            memory.set(address, address);
+        }
+        memory.set(Long.MAX_VALUE, 1);
+
+        assertThat(memory.get((1L << 40) + 42L * PagedMemory.PAGE_SIZE)).isEqualTo((1L << 40) + 42L * PagedMemory.PAGE_SIZE);
+        assertThat(memory.get(Long.MAX_VALUE)).isEqualTo(1L);
+        assertThat(memory.pagesTouched()).isEqualTo(101);
+    }
+
+    @Test
+    void shareForkedPagesUntilTheyAreWritten() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        memory.set(PagedMemory.PAGE_SIZE, 4);
+
+        PagedMemory fork = memory.fork();
+        fork.set(1, 20);
+
+        assertThat(memory.get(1)).isEqualTo(2L);
+        assertThat(fork.get(1)).isEqualTo(20L);
+        assertThat(fork.get(PagedMemory.PAGE_SIZE)).isEqualTo(4L);
+        assertThat(fork.sharedPages()).isEqualTo(1);
+        assertThat(memory.sharedPages()).isEqualTo(2);
+
+        memory.set(PagedMemory.PAGE_SIZE, 5);
+
+        assertThat(fork.get(PagedMemory.PAGE_SIZE)).isEqualTo(4L);
+        assertThat(memory.sharedPages()).isEqualTo(1);
+    }
+
+    @Test
+    void reloadWithoutTouchingSharedPages() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        PagedMemory fork = memory.fork();
+
+        fork.load(new PagedMemory(new long[]{7}));
+
+        assertThat(fork.get(0)).isEqualTo(7L);
+        assertThat(fork.get(1)).isEqualTo(0L);
+        assertThat(memory.get(1)).isEqualTo(2L);
+    }
+
+    @Test
+    void countOnlyThePagesAForkCopied() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        memory.set(PagedMemory.PAGE_SIZE, 4);
+
+        PagedMemory fork = memory.fork();
+
+        assertThat(fork.pagesTouched()).isEqualTo(0);
+        assertThat(fork.residentBytes()).isEqualTo(0L);
+
+        fork.set(1, 20);
+        fork.set(1, 21);
+
+        assertThat(fork.pagesTouched()).isEqualTo(1);
+        assertThat(memory.pagesTouched()).isEqualTo(2);
+
+        fork.load(new PagedMemory(new long[]{7}));
+
+        assertThat(fork.pagesTouched()).isEqualTo(2);
+        assertThat(fork.residentBytes()).isEqualTo(2L * PagedMemory.PAGE_SIZE * Long.BYTES);
+    }
+
+    @Test
+    void trackPagesWrittenInTheCurrentEpoch() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        memory.set(1L << 40, 4);
+        assertThat(memory.dirtyPages()).isEqualTo(2);
+
+        memory.newEpoch();
+        assertThat(memory.epoch()).isEqualTo(1L);
+        assertThat(memory.dirtyPages()).isZero();
+
+        memory.set(2, 30);
+        memory.set(2, 31);
+        memory.set(5L * PagedMemory.PAGE_SIZE, 6);
+
+        assertThat(memory.dirtyPages()).isEqualTo(2);
+        assertThat(memory.isDirty(0)).isTrue();
+        assertThat(memory.isDirty(5)).isTrue();
+        assertThat(memory.isDirty((1L << 40) >>> PagedMemory.PAGE_BITS)).isFalse();
+        assertThat(memory.get(2)).isEqualTo(31L);
+    }
+
+    @Test
+    void forksTrackTheirOwnWrites() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        memory.set(PagedMemory.PAGE_SIZE, 4);
+        memory.newEpoch();
+
+        PagedMemory fork = memory.fork();
+        fork.set(PagedMemory.PAGE_SIZE, 5);
+        memory.set(0, 10);
+
+        assertThat(fork.isDirty(1)).isTrue();
+        assertThat(fork.isDirty(0)).isFalse();
+        assertThat(memory.isDirty(0)).isTrue();
+        assertThat(memory.isDirty(1)).isFalse();
+        assertThat(memory.get(PagedMemory.PAGE_SIZE)).isEqualTo(4L);
+        assertThat(fork.get(0)).isEqualTo(1L);
+    }
+
+    @Test
+    void compareContentsPageByPage() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        PagedMemory fork = memory.fork();
+        assertThat(memory.contentEquals(fork)).isTrue();
+
+        fork.set(1L << 40, 0);
+        assertThat(memory.contentEquals(fork)).isTrue();
+
+        fork.set(1, 20);
+        assertThat(memory.contentEquals(fork)).isFalse();
+        assertThat(fork.contentEquals(memory)).isFalse();
+
+        fork.set(1, 2);
+        assertThat(memory.contentEquals(fork)).isTrue();
+        assertThat(memory.contentEquals(new PagedMemory(new long[]{1, 2, 3}))).isTrue();
+    }
+
+    @Test
+    void restoreBySharingTheSnapshotPages() {
+        PagedMemory memory = new PagedMemory(new long[]{1, 2, 3});
+        memory.set(PagedMemory.PAGE_SIZE, 4);
+        PagedMemory snapshot = memory.fork();
+        memory.newEpoch();
+        memory.set(1, 20);
+        memory.set(5L * PagedMemory.PAGE_SIZE, 6);
+        memory.set(1L << 40, 7);
+        int touched = memory.pagesTouched();
+
+        memory.restore(snapshot);
+
+        assertThat(memory.get(1)).isEqualTo(2L);
+        assertThat(memory.get(PagedMemory.PAGE_SIZE)).isEqualTo(4L);
+        assertThat(memory.get(5L * PagedMemory.PAGE_SIZE)).isEqualTo(0L);
+        assertThat(memory.get(1L << 40)).isEqualTo(0L);
+        assertThat(memory.contentEquals(snapshot)).isTrue();
+        assertThat(memory.sharedPages()).isEqualTo(2);
+        assertThat(memory.isDirty(0)).isTrue();
+        assertThat(memory.isDirty(1)).isFalse();
+        assertThat(memory.dirtyPages()).isEqualTo(3);
+        assertThat(memory.pagesTouched()).isEqualTo(touched + 2);
+
+        memory.set(PagedMemory.PAGE_SIZE, 5);
+
+        assertThat(snapshot.get(PagedMemory.PAGE_SIZE)).isEqualTo(4L);
+    }
+}
@@ -0,0 +1,140 @@
+package it.matteopierro.computer;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+class Peephole {
+    static final byte NONE = 0;
+    static final byte COMPARE_JUMP = 1;
+    static final byte ADD_IMMEDIATE = 2;
+    static final byte BASE_STORE = 3;
+
+    private static final int IMMEDIATE_MODE = 1;
+    private static final int RELATIVE_MODE = 2;
+
+    final byte[] kinds;
+    final int[] firstInstructions;
+    final int[] secondInstructions;
+    private final int[] owners;
+    private int fused = 0;
+
+    private Peephole(int programLength) {
+        kinds = new byte[programLength];
+        firstInstructions = new int[programLength];
+        secondInstructions = new int[programLength];
+        owners = new int[programLength];
+        Arrays.fill(owners, -1);
+    }
+
+    private Peephole(Peephole template) {
+        kinds = template.kinds.clone();
+        firstInstructions = template.firstInstructions;
+        secondInstructions = template.secondInstructions;
+        owners = template.owners;
+        fused = template.fused;
+    }
+
+    static Peephole analyze(Machine machine, int programLength) {
+        return analyze(machine, programLength, address -> ControlFlowGraph.length(machine.get(address)));
+    }
+
+    // the instruction lengths can come from the decode table of a binary image
+    static Peephole analyze(Machine machine, int programLength, IntUnaryOperator lengths) {
+        Peephole peephole = new Peephole(programLength);
+        int address = 0;
+        while (address < programLength) {
+            int length = lengths.applyAsInt(address);
+            if (length == 0) {
+                address++;
+                continue;
+            }
+            int next = address + length;
+            if (next < programLength) {
+                int fusedLength = peephole.match(machine, address, length, next, lengths.applyAsInt(next));
+                if (fusedLength > 0) {
+                    peephole.fuse(address, fusedLength);
+                    address += fusedLength;
+                    continue;
+                }
+            }
+            address = next;
+        }
+        return peephole;
+    }
+
+    Peephole copyFor(Machine machine, ProgramImage image) {
+        Peephole copy = new Peephole(this);
+        for (int address = 0; address < owners.length; address++) {
+            if (owners[address] >= 0 && machine.get(address) != image.get(address)) copy.guard(address);
+        }
+        return copy;
+    }
+
+    private int match(Machine machine, int address, int length, int next, int secondLength) {
+        long first = machine.get(address);
+        long second = machine.get(next);
+        int operation = (int) (first % 100);
+        int nextOperation = (int) (second % 100);
+        if (secondLength == 0 || next + secondLength > kinds.length) {
+            secondLength = 0;
+        }
+
+        if ((operation == 7 || operation == 8) && (nextOperation == 5 || nextOperation == 6) && secondLength > 0) {
+            return record(address, COMPARE_JUMP, first, second, length + secondLength);
+        }
+        if (operation == 1 && isAddImmediate(machine, address, first)) {
+            return record(address, ADD_IMMEDIATE, first, 0, length);
+        }
+        if (operation == 9 && first / 100 == IMMEDIATE_MODE && secondLength > 0 && storesRelative(second)) {
+            return record(address, BASE_STORE, first, second, length + secondLength);
+        }
+        return 0;
+    }
+
+    private int record(int address, byte kind, long first, long second, int length) {
+        kinds[address] = kind;
+        firstInstructions[address] = (int) first;
+        secondInstructions[address] = (int) second;
+        return length;
+    }
+
+    private void fuse(int start, int length) {
+        for (int address = start; address < start + length; address++) {
+            owners[address] = start;
+        }
+        fused++;
+    }
+
+    private static boolean isAddImmediate(Machine machine, int address, long instruction) {
+        int modes = (int) (instruction / 100);
+        int firstMode = modes % 10;
+        int secondMode = modes / 10 % 10;
+        int targetMode = modes / 100;
+        if (firstMode == IMMEDIATE_MODE && secondMode != IMMEDIATE_MODE) {
+            return secondMode == targetMode && machine.get(address + 2) == machine.get(address + 3);
+        }
+        if (secondMode == IMMEDIATE_MODE && firstMode != IMMEDIATE_MODE) {
+            return firstMode == targetMode && machine.get(address + 1) == machine.get(address + 3);
+        }
+        return false;
+    }
+
+    private static boolean storesRelative(long instruction) {
+        int operation = (int) (instruction % 100);
+        return (operation == 1 || operation == 2 || operation == 7 || operation == 8)
+                && instruction / 10000 == RELATIVE_MODE;
+    }
+
+    boolean guard(long address) {
+        if (address < 0 || address >= owners.length) return false;
+        int start = owners[(int) address];
+        if (start < 0 || kinds[start] == NONE) return false;
+        kinds[start] = NONE;
+        fused--;
+        return true;
+    }
+
+    int fused() {
+        return fused;
+    }
+}
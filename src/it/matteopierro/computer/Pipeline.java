@@ -0,0 +1,120 @@
+package it.matteopierro.computer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Pipeline {
+    private static final ExecutorService THREADS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Machine> machines;
+    private final List<LongRingBuffer> inputs;
+    private final List<List<LongRingBuffer>> outputs;
+    private final long[] lastOutputs;
+
+    private Pipeline(List<Machine> machines, List<LongRingBuffer> inputs, List<List<LongRingBuffer>> outputs) {
+        this.machines = machines;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.lastOutputs = new long[machines.size()];
+    }
+
+    public static Builder builder(LongRingBuffer.WaitStrategy waitStrategy) {
+        return new Builder(waitStrategy);
+    }
+
+    public long[] run() {
+        List<Future<?>> running = new ArrayList<>();
+        for (int node = 0; node < machines.size(); node++) {
+            int current = node;
+            running.add(THREADS.submit(() -> run(current)));
+        }
+        try {
+            for (Future<?> node : running) {
+                node.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            running.forEach(node -> node.cancel(true));
+            throw new RuntimeException(e);
+        }
+        return lastOutputs.clone();
+    }
+
+    private void run(int node) {
+        LongRingBuffer input = inputs.get(node);
+        List<LongRingBuffer> downstream = outputs.get(node);
+        try {
+            machines.get(node).execute(input, value -> {
+                lastOutputs[node] = value;
+                for (LongRingBuffer output : downstream) {
+                    output.put(value);
+                }
+            });
+        } finally {
+            input.close();
+            downstream.forEach(LongRingBuffer::close);
+        }
+    }
+
+    public long lastOutput(int node) {
+        return lastOutputs[node];
+    }
+
+    public static class Builder {
+        private final LongRingBuffer.WaitStrategy waitStrategy;
+        private final List<Machine> machines = new ArrayList<>();
+        private final List<long[]> initialInputs = new ArrayList<>();
+        private final List<Integer> upstream = new ArrayList<>();
+        private int capacity = 1024;
+
+        private Builder(LongRingBuffer.WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+        }
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public int add(Machine machine, long... initialInputs) {
+            machines.add(machine);
+            this.initialInputs.add(initialInputs);
+            upstream.add(null);
+            return machines.size() - 1;
+        }
+
+        public Builder connect(int from, int to) {
+            if (upstream.get(to) != null) {
+                throw new IllegalArgumentException("Machine " + to + " is already fed by machine " + upstream.get(to));
+            }
+            upstream.set(to, from);
+            return this;
+        }
+
+        public Pipeline build() {
+            List<LongRingBuffer> inputs = new ArrayList<>();
+            List<List<LongRingBuffer>> outputs = new ArrayList<>();
+            for (int node = 0; node < machines.size(); node++) {
+                long[] initial = initialInputs.get(node);
+                LongRingBuffer input = new LongRingBuffer(Math.max(capacity, initial.length), waitStrategy);
+                for (long value : initial) {
+                    input.put(value);
+                }
+                if (upstream.get(node) == null) input.close();
+                inputs.add(input);
+                outputs.add(new ArrayList<>());
+            }
+            for (int node = 0; node < machines.size(); node++) {
+                if (upstream.get(node) != null) outputs.get(upstream.get(node)).add(inputs.get(node));
+            }
+            return new Pipeline(new ArrayList<>(machines), inputs, outputs);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineTest {
+
+    private static final String AMPLIFIER = "3,26,1001,26,-4,26,3,27,1002,27,2,27,1,27,26,27,4,27,1001,28,-1,28,1005,28,6,99,0,0,5";
+
+    @Test
+    void runAFeedbackLoop() {
+        assertThat(amplify(LongRingBuffer.WaitStrategy.PARK)).isEqualTo(139629729L);
+        assertThat(amplify(LongRingBuffer.WaitStrategy.SPIN)).isEqualTo(139629729L);
+    }
+
+    @Test
+    void broadcastOutputsToEveryDownstreamMachine() {
+        ProgramImage doubler = ProgramImage.parse("3,9,102,2,9,9,4,9,99,0");
+        Pipeline.Builder builder = Pipeline.builder(LongRingBuffer.WaitStrategy.PARK);
+        int source = builder.add(doubler.newMachine(), 5);
+        int left = builder.add(doubler.newMachine());
+        int right = builder.add(doubler.newMachine());
+        builder.connect(source, left).connect(source, right);
+
+        long[] outputs = builder.build().run();
+
+        assertThat(outputs).containsExactly(10L, 20L, 20L);
+    }
+
+    private static long amplify(LongRingBuffer.WaitStrategy waitStrategy) {
+        ProgramImage amplifier = ProgramImage.parse(AMPLIFIER);
+        Pipeline.Builder builder = Pipeline.builder(waitStrategy);
+        int first = builder.add(amplifier.newMachine(), 9, 0);
+        int previous = first;
+        for (long phase = 8; phase >= 5; phase--) {
+            int next = builder.add(amplifier.newMachine(), phase);
+            builder.connect(previous, next);
+            previous = next;
+        }
+        builder.connect(previous, first);
+        return builder.build().run()[previous];
+    }
+}
@@ -0,0 +1,203 @@
+package it.matteopierro.computer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+public class Profiler implements ProfilerMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("intcode.profiling");
+
+    private static final int POSITION_MODE = 0;
+    private static final int IMMEDIATE_MODE = 1;
+    private static final int RELATIVE_MODE = 2;
+    private static final int HOTTEST_ADDRESSES = 10;
+
+    private final long[] operationCounts = new long[100];
+    private final long[] addressHits;
+    private final long[] reads = new long[3];
+    private final long[] writes = new long[3];
+    private long instructions;
+    private long runningNanos;
+    private long blockedNanos;
+
+    public Profiler(int programLength) {
+        this.addressHits = new long[programLength];
+    }
+
+    void instruction(long address, int operation) {
+        instructions++;
+        if (operation >= 0) operationCounts[operation]++;
+        if (address >= 0 && address < addressHits.length) addressHits[(int) address]++;
+    }
+
+    void read(int mode) {
+        reads[mode]++;
+    }
+
+    void write(int mode) {
+        writes[mode]++;
+    }
+
+    void running(long nanos) {
+        runningNanos += nanos;
+    }
+
+    void blocked(long nanos) {
+        blockedNanos += nanos;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("it.matteopierro.computer:type=Profiler,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register profiler " + name, e);
+        }
+    }
+
+    @Override
+    public long getInstructions() {
+        return instructions;
+    }
+
+    @Override
+    public long getInstructionsPerSecond() {
+        return snapshot().instructionsPerSecond();
+    }
+
+    @Override
+    public long getBlockedMillis() {
+        return blockedNanos / 1_000_000;
+    }
+
+    @Override
+    public long[] getOperationCounts() {
+        return operationCounts.clone();
+    }
+
+    @Override
+    public int[] getHottestAddresses() {
+        return snapshot().hottestAddresses(HOTTEST_ADDRESSES);
+    }
+
+    @Override
+    public long getPositionReads() {
+        return reads[POSITION_MODE];
+    }
+
+    @Override
+    public long getImmediateReads() {
+        return reads[IMMEDIATE_MODE];
+    }
+
+    @Override
+    public long getRelativeReads() {
+        return reads[RELATIVE_MODE];
+    }
+
+    @Override
+    public long getPositionWrites() {
+        return writes[POSITION_MODE];
+    }
+
+    @Override
+    public long getRelativeWrites() {
+        return writes[RELATIVE_MODE];
+    }
+
+    public static final class Snapshot {
+        private final long[] operationCounts;
+        private final long[] addressHits;
+        private final long[] reads;
+        private final long[] writes;
+        private final long instructions;
+        private final long runningNanos;
+        private final long blockedNanos;
+
+        private Snapshot(Profiler profiler) {
+            this.operationCounts = profiler.operationCounts.clone();
+            this.addressHits = profiler.addressHits.clone();
+            this.reads = profiler.reads.clone();
+            this.writes = profiler.writes.clone();
+            this.instructions = profiler.instructions;
+            this.runningNanos = profiler.runningNanos;
+            this.blockedNanos = profiler.blockedNanos;
+        }
+
+        public long instructions() {
+            return instructions;
+        }
+
+        public long operationCount(int operation) {
+            return operationCounts[operation];
+        }
+
+        public long addressHits(int address) {
+            return addressHits[address];
+        }
+
+        public int[] hottestAddresses(int limit) {
+            return IntStream.range(0, addressHits.length)
+                    .filter(address -> addressHits[address] > 0)
+                    .boxed()
+                    .sorted(Comparator.comparingLong((Integer address) -> addressHits[address]).reversed())
+                    .limit(limit)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        public long positionReads() {
+            return reads[POSITION_MODE];
+        }
+
+        public long immediateReads() {
+            return reads[IMMEDIATE_MODE];
+        }
+
+        public long relativeReads() {
+            return reads[RELATIVE_MODE];
+        }
+
+        public long positionWrites() {
+            return writes[POSITION_MODE];
+        }
+
+        public long relativeWrites() {
+            return writes[RELATIVE_MODE];
+        }
+
+        public long runningNanos() {
+            return runningNanos;
+        }
+
+        public long blockedNanos() {
+            return blockedNanos;
+        }
+
+        public long instructionsPerSecond() {
+            return runningNanos == 0 ? 0 : instructions * 1_000_000_000L / runningNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile{" +
+                    "instructions=" + instructions +
+                    ", instructionsPerSecond=" + instructionsPerSecond() +
+                    ", blockedNanos=" + blockedNanos +
+                    ", operationCounts=" + Arrays.toString(Arrays.copyOf(operationCounts, 10)) +
+                    ", stop=" + operationCounts[99] +
+                    ", reads=" + Arrays.toString(reads) +
+                    ", writes=" + Arrays.toString(writes) +
+                    ", hottestAddresses=" + Arrays.toString(hottestAddresses(HOTTEST_ADDRESSES)) +
+                    '}';
+        }
+    }
+}
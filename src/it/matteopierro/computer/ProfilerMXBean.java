@@ -0,0 +1,23 @@
+package it.matteopierro.computer;
+
+public interface ProfilerMXBean {
+    long getInstructions();
+
+    long getInstructionsPerSecond();
+
+    long getBlockedMillis();
+
+    long[] getOperationCounts();
+
+    int[] getHottestAddresses();
+
+    long getPositionReads();
+
+    long getImmediateReads();
+
+    long getRelativeReads();
+
+    long getPositionWrites();
+
+    long getRelativeWrites();
+}
@@ -0,0 +1,91 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProfilerTest {
+
+    private static final String COUNTDOWN = "3,100,1001,100,-1,100,1005,100,2,204,0,99";
+
+    @Test
+    @EnabledIfSystemProperty(named = "intcode.profiling", matches = "true")
+    void countOperationsAndAddresses() {
+        Profiler profiler = new Profiler(12);
+        Machine machine = Machine.of(COUNTDOWN).profile(profiler);
+
+        machine.execute(() -> 5, value -> { });
+        Profiler.Snapshot profile = profiler.snapshot();
+
+        assertThat(profile.operationCount(3)).isEqualTo(1L);
+        assertThat(profile.operationCount(1)).isEqualTo(5L);
+        assertThat(profile.operationCount(5)).isEqualTo(5L);
+        assertThat(profile.operationCount(4)).isEqualTo(1L);
+        assertThat(profile.operationCount(99)).isEqualTo(1L);
+        assertThat(profile.instructions()).isEqualTo(13L);
+        assertThat(profile.addressHits(2)).isEqualTo(5L);
+        assertThat(profile.hottestAddresses(2)).containsExactlyInAnyOrder(2, 6);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "intcode.profiling", matches = "true")
+    void countMemoryAccessesPerMode() {
+        Profiler profiler = new Profiler(12);
+        Machine machine = Machine.of(COUNTDOWN).profile(profiler);
+
+        machine.execute(() -> 5, value -> { });
+        Profiler.Snapshot profile = profiler.snapshot();
+
+        assertThat(profile.positionReads()).isEqualTo(10L);
+        assertThat(profile.immediateReads()).isEqualTo(9L);
+        assertThat(profile.relativeReads()).isEqualTo(1L);
+        assertThat(profile.positionWrites()).isEqualTo(6L);
+        assertThat(profile.relativeWrites()).isEqualTo(0L);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "intcode.profiling", matches = "true")
+    void measureTimeBlockedOnInput() {
+        Profiler profiler = new Profiler(12);
+        Machine machine = Machine.of(COUNTDOWN).profile(profiler);
+
+        machine.execute(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 5;
+        }, value -> { });
+
+        assertThat(profiler.snapshot().blockedNanos()).isGreaterThanOrEqualTo(20_000_000L);
+        assertThat(profiler.snapshot().instructionsPerSecond()).isGreaterThan(0L);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "intcode.profiling", matches = "true")
+    void exportOverJmx() throws Exception {
+        Profiler profiler = new Profiler(12);
+        Machine.of(COUNTDOWN).profile(profiler).execute(() -> 5, value -> { });
+
+        ObjectName name = profiler.register("countdown");
+
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Instructions")).isEqualTo(13L);
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    @Test
+    @DisabledIfSystemProperty(named = "intcode.profiling", matches = "true")
+    void refuseToProfileWhenProfilingIsCompiledOut() {
+        Machine machine = Machine.of(COUNTDOWN);
+
+        assertThatThrownBy(() -> machine.profile(new Profiler(12)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
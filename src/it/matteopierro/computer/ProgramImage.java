@@ -0,0 +1,162 @@
+package it.matteopierro.computer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+public final class ProgramImage {
+    private static final int MAXIMUM_CACHED_PROGRAMS = 128;
+    private static final Cache<String, ProgramImage> PARSED_PROGRAMS = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_CACHED_PROGRAMS)
+            .build();
+    private static final Cache<LoadedFile, ProgramImage> LOADED_PROGRAMS = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_CACHED_PROGRAMS)
+            .build();
+
+    // heap backed for parsed programs, a read-only mapping of the file for binary images
+    private final LongBuffer instructions;
+    // the file a binary image was mapped from, its precomputed sections replace the analyses
+    private final ImageFile file;
+    private volatile BlockCompiler compiler;
+    private volatile Machine.Snapshot warmStart;
+    private volatile Peephole peephole;
+    private volatile ControlFlowGraph controlFlow;
+
+    private ProgramImage(long[] instructions) {
+        this(LongBuffer.wrap(instructions));
+    }
+
+    private ProgramImage(LongBuffer instructions) {
+        this(instructions, null);
+    }
+
+    ProgramImage(LongBuffer instructions, ImageFile file) {
+        this.instructions = instructions;
+        this.file = file;
+    }
+
+    public static ProgramImage of(long[] instructions) {
+        return new ProgramImage(instructions.clone());
+    }
+
+    public static ProgramImage parse(String program) {
+        try {
+            return PARSED_PROGRAMS.get(program, () -> new ProgramImage(Machine.parse(program.split(","))));
+        } catch (ExecutionException e) {
+            throw new IllegalArgumentException("Cannot parse program", e.getCause());
+        }
+    }
+
+    // a rewritten file gets a new modification time, so it is read again instead of served stale
+    public static ProgramImage load(Path path) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+        LoadedFile key = new LoadedFile(normalized, attributes.lastModifiedTime(), attributes.size());
+        try {
+            return LOADED_PROGRAMS.get(key, () -> ImageFile.isImageFile(normalized)
+                    ? ImageFile.map(normalized).image()
+                    : new ProgramImage(Machine.parse(Files.readString(normalized).split(","))));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalArgumentException("Cannot parse " + normalized, e.getCause());
+        }
+    }
+
+    public int length() {
+        return instructions.limit();
+    }
+
+    public long get(int address) {
+        return instructions.get(address);
+    }
+
+    public void copyTo(long[] destination, int from, int destinationPosition, int length) {
+        LongBuffer source = instructions.duplicate();
+        source.position(from);
+        source.get(destination, destinationPosition, length);
+    }
+
+    public long[] toArray() {
+        long[] copy = new long[length()];
+        copyTo(copy, 0, 0, copy.length);
+        return copy;
+    }
+
+    public PagedMemory newMemory() {
+        return new PagedMemory(this);
+    }
+
+    public Machine newMachine() {
+        return new Machine(this);
+    }
+
+    public Machine.Snapshot warmStart() {
+        Machine.Snapshot snapshot = warmStart;
+        if (snapshot == null) {
+            warmStart = snapshot = Machine.warmUp(this);
+        }
+        return snapshot;
+    }
+
+    public ControlFlowGraph controlFlow() {
+        ControlFlowGraph graph = controlFlow;
+        if (graph == null) {
+            controlFlow = graph = file != null && file.hasControlFlow() ? ControlFlowGraph.of(file) : ControlFlowGraph.of(this);
+        }
+        return graph;
+    }
+
+    Peephole peephole() {
+        Peephole analyzed = peephole;
+        if (analyzed == null) {
+            peephole = analyzed = file != null && file.hasDecodeTable()
+                    ? Peephole.analyze(newMachine(), length(), file::instructionLength)
+                    : Peephole.analyze(newMachine(), length());
+        }
+        return analyzed;
+    }
+
+    BlockCompiler blockCompiler() {
+        BlockCompiler shared = compiler;
+        if (shared == null) {
+            synchronized (this) {
+                shared = compiler;
+                if (shared == null) compiler = shared = new BlockCompiler(this);
+            }
+        }
+        return shared;
+    }
+
+    private static final class LoadedFile {
+        private final Path path;
+        private final FileTime modified;
+        private final long size;
+
+        private LoadedFile(Path path, FileTime modified, long size) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof LoadedFile)) return false;
+            LoadedFile file = (LoadedFile) other;
+            return size == file.size && path.equals(file.path) && modified.equals(file.modified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, modified, size);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgramImageTest {
+
+    @Test
+    void parseEachProgramOnce() {
+        String program = "1001,4,1,4,99";
+
+        assertThat(ProgramImage.parse(program)).isSameAs(ProgramImage.parse(new String(program)));
+    }
+
+    @Test
+    void loadEachFileOnce() throws IOException {
+        ProgramImage image = ProgramImage.load(Paths.get("./input_day19"));
+
+        assertThat(ProgramImage.load(Paths.get("input_day19"))).isSameAs(image);
+        assertThat(image.get(0)).isEqualTo(109L);
+    }
+
+    @Test
+    void loadARewrittenFileAgain() throws IOException {
+        Path file = Files.createTempFile("program", ".txt");
+        try {
+            Files.writeString(file, "104,1,99");
+            ProgramImage first = ProgramImage.load(file);
+            Files.writeString(file, "104,22,99");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+            ProgramImage second = ProgramImage.load(file);
+
+            assertThat(second).isNotSameAs(first);
+            assertThat(second.get(1)).isEqualTo(22L);
+            assertThat(ProgramImage.load(file)).isSameAs(second);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void shareCompiledBlocksBetweenTheMachinesOfAnImage() {
+        ProgramImage image = ProgramImage.of(new long[]{1001, 8, -1, 8, 1005, 8, 0, 99, 5000});
+        Machine first = image.newMachine().tiered();
+        Machine second = image.newMachine().tiered();
+
+        first.execute(new ComputerListener());
+        second.execute(new ComputerListener());
+
+        assertThat(first.compiledBlocks()).isEqualTo(1);
+        assertThat(second.compiledBlocks()).isEqualTo(1);
+        assertThat(image.blockCompiler().classes()).isEqualTo(1);
+    }
+
+    @Test
+    void startEveryMachineFromAFreshCopy() {
+        ProgramImage image = ProgramImage.parse("1001,5,1,5,99,41");
+        Machine first = image.newMachine();
+        Machine second = image.newMachine();
+
+        first.run();
+
+        assertThat(first.get(5)).isEqualTo(42L);
+        assertThat(second.get(5)).isEqualTo(41L);
+        assertThat(image.get(5)).isEqualTo(41L);
+    }
+}
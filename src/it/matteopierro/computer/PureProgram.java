@@ -0,0 +1,84 @@
+package it.matteopierro.computer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Arrays;
+
+public class PureProgram {
+    private final ProgramImage image;
+    private final LoadingCache<Inputs, long[]> results;
+
+    public PureProgram(ProgramImage image, long maximumSize) {
+        this.image = image;
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(CacheLoader.from(this::run));
+    }
+
+    public long[] execute(long... inputs) {
+        return results.getUnchecked(new Inputs(inputs.clone())).clone();
+    }
+
+    public long query(long... inputs) {
+        long[] outputs = results.getUnchecked(new Inputs(inputs.clone()));
+        if (outputs.length == 0) {
+            throw new IllegalStateException("No output for " + Arrays.toString(inputs));
+        }
+        return outputs[outputs.length - 1];
+    }
+
+    public CacheStats stats() {
+        return results.stats();
+    }
+
+    public double hitRate() {
+        return results.stats().hitRate();
+    }
+
+    private long[] run(Inputs inputs) {
+        Machine machine = image.warmStart().newMachine();
+        long[] outputs = new long[1];
+        int count = 0;
+        int next = 0;
+        while (true) {
+            switch (machine.run()) {
+                case NEEDS_INPUT:
+                    if (next == inputs.values.length) {
+                        throw new IllegalArgumentException("Program needs more than " + next + " inputs");
+                    }
+                    machine.addInput(inputs.values[next++]);
+                    break;
+                case OUTPUT:
+                    if (count == outputs.length) outputs = Arrays.copyOf(outputs, count * 2);
+                    outputs[count++] = machine.output();
+                    break;
+                case HALTED:
+                    return Arrays.copyOf(outputs, count);
+            }
+        }
+    }
+
+    private static final class Inputs {
+        private final long[] values;
+        private final int hash;
+
+        private Inputs(long[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Inputs && Arrays.equals(values, ((Inputs) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PureProgramTest {
+
+    @Test
+    void answerRepeatedQueriesFromTheCache() throws IOException {
+        PureProgram drone = new PureProgram(ProgramImage.load(Paths.get("./input_day19")), 100);
+
+        long first = drone.query(10, 12);
+        long second = drone.query(10, 12);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(drone.stats().missCount()).isEqualTo(1L);
+        assertThat(drone.stats().hitCount()).isEqualTo(1L);
+        assertThat(drone.hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void keepAllOutputsOfARun() {
+        PureProgram doubler = new PureProgram(ProgramImage.parse("3,11,4,11,102,2,11,11,4,11,99,0"), 10);
+
+        long[] outputs = doubler.execute(21);
+        outputs[0] = 0;
+
+        assertThat(doubler.execute(21)).containsExactly(21L, 42L);
+    }
+
+    @Test
+    void evictTheLeastRecentlyUsedInputs() {
+        PureProgram echo = new PureProgram(ProgramImage.parse("3,5,4,5,99,0"), 2);
+
+        echo.query(1);
+        echo.query(2);
+        echo.query(3);
+        echo.query(1);
+
+        assertThat(echo.stats().evictionCount()).isGreaterThan(0L);
+        assertThat(echo.stats().missCount()).isEqualTo(4L);
+    }
+}
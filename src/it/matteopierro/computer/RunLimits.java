@@ -0,0 +1,70 @@
+package it.matteopierro.computer;
+
+import java.time.Duration;
+
+public final class RunLimits {
+    private static final long DEFAULT_CHECK_INTERVAL = 10_000;
+    private static final RunLimits UNLIMITED = new RunLimits(Long.MAX_VALUE, Long.MAX_VALUE, DEFAULT_CHECK_INTERVAL, null);
+
+    private final long instructions;
+    private final long deadlineNanos;
+    private final long checkInterval;
+    private final Cancellation cancellation;
+
+    private RunLimits(long instructions, long deadlineNanos, long checkInterval, Cancellation cancellation) {
+        this.instructions = instructions;
+        this.deadlineNanos = deadlineNanos;
+        this.checkInterval = checkInterval;
+        this.cancellation = cancellation;
+    }
+
+    public static RunLimits unlimited() {
+        return UNLIMITED;
+    }
+
+    public RunLimits instructions(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Instruction budget must be positive: " + budget);
+        }
+        return new RunLimits(budget, deadlineNanos, checkInterval, cancellation);
+    }
+
+    public RunLimits deadline(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Deadline must be in the future: " + timeout);
+        }
+        return new RunLimits(instructions, timeout.toNanos(), checkInterval, cancellation);
+    }
+
+    // the clock and the cancellation are only looked at between slices of this many instructions
+    public RunLimits checkEvery(long instructions) {
+        if (instructions <= 0) {
+            throw new IllegalArgumentException("Check interval must be positive: " + instructions);
+        }
+        return new RunLimits(this.instructions, deadlineNanos, instructions, cancellation);
+    }
+
+    public RunLimits cancelledBy(Cancellation cancellation) {
+        return new RunLimits(instructions, deadlineNanos, checkInterval, cancellation);
+    }
+
+    public long instructions() {
+        return instructions;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != Long.MAX_VALUE;
+    }
+
+    public long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long checkInterval() {
+        return checkInterval;
+    }
+
+    public boolean isCancelled() {
+        return cancellation != null && cancellation.isCancelled();
+    }
+}
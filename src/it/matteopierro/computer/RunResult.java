@@ -0,0 +1,41 @@
+package it.matteopierro.computer;
+
+public final class RunResult {
+    public enum Outcome {
+        HALTED,
+        OUT_OF_INSTRUCTIONS,
+        DEADLINE_EXCEEDED,
+        CANCELLED
+    }
+
+    private final Outcome outcome;
+    private final long instructions;
+    private final long elapsedNanos;
+
+    RunResult(Outcome outcome, long instructions, long elapsedNanos) {
+        this.outcome = outcome;
+        this.instructions = instructions;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Outcome outcome() {
+        return outcome;
+    }
+
+    public boolean halted() {
+        return outcome == Outcome.HALTED;
+    }
+
+    public long instructions() {
+        return instructions;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return outcome + " after " + instructions + " instructions in " + elapsedNanos / 1_000_000 + "ms";
+    }
+}
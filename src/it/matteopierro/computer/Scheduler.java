@@ -0,0 +1,179 @@
+package it.matteopierro.computer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Scheduler {
+    private final long timeSlice;
+    private final List<Process> processes = new ArrayList<>();
+    private long delivered = 0;
+    private long rounds = 0;
+    private int live = 0;
+    private boolean running = false;
+
+    public Scheduler(long timeSlice) {
+        if (timeSlice <= 0) {
+            throw new IllegalArgumentException("Time slice must be positive: " + timeSlice);
+        }
+        this.timeSlice = timeSlice;
+    }
+
+    public interface OutputHandler {
+        void accept(int process, long value);
+    }
+
+    public int spawn(Machine machine, OutputHandler output) {
+        return spawn(new Process(machine, output, false, 0));
+    }
+
+    public int spawn(Machine machine, long idleInput, OutputHandler output) {
+        return spawn(new Process(machine, output, true, idleInput));
+    }
+
+    private int spawn(Process process) {
+        processes.add(process);
+        if (!process.machine.halted()) live++;
+        return processes.size() - 1;
+    }
+
+    // a process that runs past its budget is killed, the others keep their share of the rounds
+    public void budget(int process, long instructions) {
+        if (instructions <= 0) {
+            throw new IllegalArgumentException("Instruction budget must be positive: " + instructions);
+        }
+        Process target = processes.get(process);
+        target.budgetEnd = target.machine.instructionsExecuted() + instructions;
+    }
+
+    public void kill(int process) {
+        Process target = processes.get(process);
+        if (target.killed || target.machine.halted()) return;
+        target.killed = true;
+        live--;
+    }
+
+    public boolean killed(int process) {
+        return processes.get(process).killed;
+    }
+
+    public void send(int process, long... values) {
+        Process target = processes.get(process);
+        for (long value : values) {
+            target.machine.addInput(value);
+        }
+        target.idle = false;
+        target.pollPending = false;
+        delivered++;
+    }
+
+    public void run() {
+        run(() -> {});
+    }
+
+    public void run(Runnable onIdle) {
+        running = true;
+        while (running && live > 0) {
+            for (int process = 0; process < processes.size() && running; process++) {
+                step(process);
+            }
+            rounds++;
+            if (running && idle()) {
+                long before = delivered;
+                onIdle.run();
+                // nobody woke up the network, so it would stay idle forever
+                if (delivered == before) break;
+            }
+        }
+        running = false;
+    }
+
+    private void step(int index) {
+        Process process = processes.get(index);
+        Machine machine = process.machine;
+        if (machine.halted() || process.killed || (process.idle && !process.polling)) return;
+        // a slice is quiet when it only consumes the idle input it was given and asks for more
+        boolean quiet = process.pollPending || !machine.hasPendingInput();
+        long end = Math.min(machine.instructionsExecuted() + timeSlice, process.budgetEnd);
+        while (running && !process.killed) {
+            if (machine.instructionsExecuted() >= process.budgetEnd) {
+                kill(index);
+                return;
+            }
+            switch (machine.run(end - machine.instructionsExecuted())) {
+                case OUTPUT:
+                    quiet = false;
+                    process.output.accept(index, machine.output());
+                    break;
+                case NEEDS_INPUT:
+                    process.idle = quiet;
+                    if (process.polling) {
+                        machine.addInput(process.idleInput);
+                        process.pollPending = true;
+                    }
+                    return;
+                case YIELDED:
+                    process.idle = false;
+                    return;
+                case HALTED:
+                    process.idle = true;
+                    live--;
+                    return;
+            }
+            if (machine.instructionsExecuted() >= end) {
+                process.idle = false;
+                return;
+            }
+        }
+    }
+
+    public boolean idle() {
+        for (Process process : processes) {
+            if (process.machine.halted() || process.killed) continue;
+            if (!process.idle) return false;
+            if (process.machine.hasPendingInput() && !process.pollPending) return false;
+        }
+        return true;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public int processes() {
+        return processes.size();
+    }
+
+    public Machine machine(int process) {
+        return processes.get(process).machine;
+    }
+
+    public long rounds() {
+        return rounds;
+    }
+
+    public long instructionsExecuted() {
+        long total = 0;
+        for (Process process : processes) {
+            total += process.machine.instructionsExecuted();
+        }
+        return total;
+    }
+
+    private static final class Process {
+        private final Machine machine;
+        private final OutputHandler output;
+        private final boolean polling;
+        private final long idleInput;
+        private boolean idle = false;
+        private boolean pollPending = false;
+        private boolean killed = false;
+        private long budgetEnd = Long.MAX_VALUE;
+
+        private Process(Machine machine, OutputHandler output, boolean polling, long idleInput) {
+            this.machine = machine;
+            this.output = output;
+            this.polling = polling;
+            this.idleInput = idleInput;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchedulerTest {
+
+    private static final String AMPLIFIER = "3,26,1001,26,-4,26,3,27,1002,27,2,27,1,27,26,27,4,27,1001,28,-1,28,1005,28,6,99,0,0,5";
+    private static final String FORWARDER = "3,100,1008,100,-1,101,1005,101,0,4,100,1105,1,0";
+
+    @Test
+    void runAFeedbackLoopOnOneThread() {
+        ProgramImage amplifier = ProgramImage.parse(AMPLIFIER);
+        Scheduler scheduler = new Scheduler(3);
+        long[] thrust = new long[1];
+        for (int phase = 9; phase >= 5; phase--) {
+            int next = phase == 5 ? 0 : 10 - phase;
+            boolean last = phase == 5;
+            int process = scheduler.spawn(amplifier.newMachine(), (from, value) -> {
+                if (last) thrust[0] = value;
+                scheduler.send(next, value);
+            });
+            scheduler.send(process, phase);
+        }
+        scheduler.send(0, 0);
+
+        scheduler.run();
+
+        assertThat(thrust[0]).isEqualTo(139629729L);
+    }
+
+    @Test
+    void detectIdleOnceEveryPacketIsDelivered() {
+        ProgramImage forwarder = ProgramImage.parse(FORWARDER);
+        Scheduler scheduler = new Scheduler(5);
+        List<Long> received = new ArrayList<>();
+        int[] idles = new int[1];
+        int sink = scheduler.spawn(forwarder.newMachine(), -1, (from, value) -> received.add(value));
+        int source = scheduler.spawn(forwarder.newMachine(), -1, (from, value) -> scheduler.send(sink, value));
+        scheduler.send(source, 42, 43);
+
+        scheduler.run(() -> {
+            if (idles[0]++ == 0) {
+                assertThat(received).containsExactly(42L, 43L);
+                scheduler.send(source, 44);
+            } else {
+                assertThat(received).containsExactly(42L, 43L, 44L);
+            }
+        });
+
+        assertThat(received).containsExactly(42L, 43L, 44L);
+        assertThat(idles[0]).isEqualTo(2);
+    }
+
+    @Test
+    void stopFromAnOutputHandler() {
+        ProgramImage forwarder = ProgramImage.parse(FORWARDER);
+        Scheduler scheduler = new Scheduler(5);
+        List<Long> received = new ArrayList<>();
+        int echo = scheduler.spawn(forwarder.newMachine(), -1, (from, value) -> {
+            received.add(value);
+            scheduler.stop();
+        });
+        scheduler.send(echo, 1, 2, 3);
+
+        scheduler.run();
+
+        assertThat(received).containsExactly(1L);
+    }
+
+    @Test
+    void scheduleDeterministically() {
+        assertThat(roundsToForward(100)).isEqualTo(roundsToForward(100));
+        assertThat(roundsToForward(1)).isGreaterThan(roundsToForward(1000));
+    }
+
+    private static long roundsToForward(long timeSlice) {
+        ProgramImage forwarder = ProgramImage.parse(FORWARDER);
+        Scheduler scheduler = new Scheduler(timeSlice);
+        int previous = scheduler.spawn(forwarder.newMachine(), -1, (from, value) -> {});
+        for (int i = 0; i < 20; i++) {
+            int next = previous;
+            previous = scheduler.spawn(forwarder.newMachine(), -1, (from, value) -> scheduler.send(next, value));
+        }
+        scheduler.send(previous, 7);
+        scheduler.run();
+        return scheduler.rounds();
+    }
+
+    @Test
+    void killProcessesThatRunPastTheirBudget() {
+        for (Machine runawayMachine : new Machine[]{Machine.of("1105,1,0"), Machine.of("1105,1,0").tiered()}) {
+            Scheduler scheduler = new Scheduler(100);
+            List<Long> received = new ArrayList<>();
+            int runaway = scheduler.spawn(runawayMachine, (from, value) -> {});
+            int worker = scheduler.spawn(Machine.of("104,7,99"), (from, value) -> received.add(value));
+            scheduler.budget(runaway, 5000);
+
+            scheduler.run();
+
+            assertThat(scheduler.killed(runaway)).isTrue();
+            assertThat(scheduler.killed(worker)).isFalse();
+            assertThat(scheduler.machine(runaway).instructionsExecuted()).isEqualTo(5000L);
+            assertThat(received).containsExactly(7L);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package it.matteopierro.computer;
+
+import java.io.PrintStream;
+
+public class Tracer {
+    private final long[] addresses;
+    private final long[] instructions;
+    private final long[] firstOperands;
+    private final long[] secondOperands;
+    private final long[] results;
+    private final int mask;
+    private final PrintStream sink;
+    private final boolean dumpOnHalt;
+    private long recorded = 0;
+    private int slot = 0;
+    private int operands = 0;
+
+    public Tracer(int capacity) {
+        this(capacity, System.err, false);
+    }
+
+    public Tracer(int capacity, PrintStream sink, boolean dumpOnHalt) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.addresses = new long[size];
+        this.instructions = new long[size];
+        this.firstOperands = new long[size];
+        this.secondOperands = new long[size];
+        this.results = new long[size];
+        this.mask = size - 1;
+        this.sink = sink;
+        this.dumpOnHalt = dumpOnHalt;
+    }
+
+    void instruction(long address, long instruction) {
+        slot = (int) recorded++ & mask;
+        addresses[slot] = address;
+        instructions[slot] = instruction;
+        firstOperands[slot] = 0;
+        secondOperands[slot] = 0;
+        results[slot] = 0;
+        operands = 0;
+    }
+
+    void operand(long value) {
+        if (operands == 0) firstOperands[slot] = value;
+        else if (operands == 1) secondOperands[slot] = value;
+        operands++;
+    }
+
+    void result(long value) {
+        results[slot] = value;
+    }
+
+    void halted() {
+        if (dumpOnHalt) sink.print(dump());
+    }
+
+    void failed(RuntimeException exception) {
+        sink.println("Machine failed: " + exception.getMessage());
+        sink.print(dump());
+    }
+
+    public long recorded() {
+        return recorded;
+    }
+
+    public int size() {
+        return (int) Math.min(recorded, addresses.length);
+    }
+
+    public long addressAt(int index) {
+        return addresses[position(index)];
+    }
+
+    public long instructionAt(int index) {
+        return instructions[position(index)];
+    }
+
+    public long resultAt(int index) {
+        return results[position(index)];
+    }
+
+    private int position(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Trace index " + index + " out of " + size());
+        }
+        return (int) (recorded - size() + index) & mask;
+    }
+
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (int index = 0; index < size(); index++) {
+            int position = position(index);
+            dump.append(String.format("%8d: %5d [%d, %d] -> %d%n",
+                    addresses[position],
+                    instructions[position],
+                    firstOperands[position],
+                    secondOperands[position],
+                    results[position]));
+        }
+        return dump.toString();
+    }
+}
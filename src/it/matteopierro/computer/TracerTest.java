@@ -0,0 +1,52 @@
+package it.matteopierro.computer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TracerTest {
+
+    private static final String COUNTDOWN = "3,100,1001,100,-1,100,1005,100,2,204,0,99";
+
+    @Test
+    void keepTheMostRecentInstructions() {
+        Tracer tracer = new Tracer(4);
+        Machine machine = Machine.of(COUNTDOWN).trace(tracer);
+
+        machine.execute(() -> 2, value -> { });
+
+        assertThat(tracer.recorded()).isEqualTo(7L);
+        assertThat(tracer.size()).isEqualTo(4);
+        assertThat(tracer.addressAt(0)).isEqualTo(2L);
+        assertThat(tracer.resultAt(0)).isEqualTo(0L);
+        assertThat(tracer.addressAt(1)).isEqualTo(6L);
+        assertThat(tracer.resultAt(1)).isEqualTo(9L);
+        assertThat(tracer.instructionAt(2)).isEqualTo(204L);
+        assertThat(tracer.resultAt(2)).isEqualTo(3L);
+        assertThat(tracer.instructionAt(3)).isEqualTo(99L);
+    }
+
+    @Test
+    void dumpOnHalt() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        Machine machine = Machine.of("1101,2,3,5,99,0").trace(new Tracer(8, new PrintStream(sink), true));
+
+        machine.execute(() -> 0, value -> { });
+
+        assertThat(sink.toString()).contains("1101 [2, 3] -> 5");
+    }
+
+    @Test
+    void dumpOnFailure() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        Machine machine = Machine.of("1101,2,3,5,99,42").trace(new Tracer(8, new PrintStream(sink), false));
+        machine.set(4, 42);
+
+        assertThatThrownBy(machine::run).hasMessageContaining("42");
+        assertThat(sink.toString()).contains("Machine failed").contains("1101 [2, 3] -> 5");
+    }
+}
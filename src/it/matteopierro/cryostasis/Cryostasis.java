@@ -1,48 +1,68 @@
 package it.matteopierro.cryostasis;
 
-import it.matteopierro.computer.Computer;
-import it.matteopierro.computer.ComputerListener;
+import it.matteopierro.computer.Checkpointer;
+import it.matteopierro.computer.ProgramImage;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
 
-public class Cryostasis extends ComputerListener {
+public class Cryostasis implements LongSupplier, LongConsumer {
 
-    private final BlockingQueue<String> inputs = new LinkedBlockingQueue<>();
+    private static final String SAVE = "save";
+
+    private final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+    private final Checkpointer checkpointer;
+    private String command = "";
+    private int commandIndex = 0;
+
+    public Cryostasis(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
 
     @Override
-    public String onReadRequested() {
+    public long getAsLong() {
         try {
-            if (inputs.isEmpty()) {
+            while (commandIndex == command.length()) {
                 System.out.println("Input:");
-                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-                String command = reader.readLine();
-                for (char c : command.toCharArray()) {
-                    inputs.add(String.valueOf((int) c));
+                String line = reader.readLine();
+                if (line == null) throw new IllegalStateException("No more commands");
+                if (line.equals(SAVE)) {
+                    checkpointer.save();
+                    System.out.println("Saved to " + checkpointer.file());
+                    continue;
                 }
-                inputs.add("10");
+                command = line + "\n";
+                commandIndex = 0;
             }
-
-            return inputs.take();
-        } catch (Exception e) {
+            return command.charAt(commandIndex++);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void onStoreRequested(String result) {
-        super.onStoreRequested(result);
-        System.out.print((char) Integer.parseInt(result));
+    public void accept(long result) {
+        System.out.print((char) result);
     }
 
     public static void main(String[] args) throws IOException {
         System.out.println("hello!");
-        String program = Files.readString(Paths.get("./input_day25"));
-        new Computer().execute(program, new Cryostasis());
+        ProgramImage program = ProgramImage.load(Paths.get("./input_day25"));
+        Path checkpoint = Paths.get("./day25.checkpoint");
+        Checkpointer checkpointer;
+        if (Files.exists(checkpoint)) {
+            checkpointer = Checkpointer.resume(program, checkpoint);
+            System.out.println("Resumed from " + checkpoint + ", type '" + SAVE + "' to save again");
+        } else {
+            checkpointer = new Checkpointer(program.newMachine(), checkpoint);
+        }
+        Cryostasis cryostasis = new Cryostasis(checkpointer);
+        checkpointer.machine().execute(cryostasis, cryostasis);
     }
 }
@@ -0,0 +1,73 @@
+package it.matteopierro.network;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+final class Mailbox {
+    private static final VarHandle TAIL;
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TAIL = lookup.findVarHandle(Mailbox.class, "tail", Packet.class);
+            NEXT = lookup.findVarHandle(Packet.class, "next", Packet.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // consumer side: the last packet taken, kept as the sentinel of the list
+    private Packet head;
+    // producer side, swapped atomically by every sender
+    private volatile Packet tail;
+    private volatile Thread waitingConsumer;
+
+    Mailbox() {
+        Packet sentinel = new Packet(0, 0);
+        head = sentinel;
+        tail = sentinel;
+    }
+
+    void offer(Packet packet) {
+        Packet previous = (Packet) TAIL.getAndSet(this, packet);
+        NEXT.setVolatile(previous, packet);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    Packet poll() {
+        Packet next = (Packet) NEXT.getAcquire(head);
+        if (next == null) return null;
+        head = next;
+        return next;
+    }
+
+    int drainTo(Consumer<Packet> consumer) {
+        int drained = 0;
+        for (Packet next = (Packet) NEXT.getAcquire(head); next != null; next = (Packet) NEXT.getAcquire(next)) {
+            head = next;
+            consumer.accept(next);
+            drained++;
+        }
+        return drained;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    void await() {
+        waitingConsumer = Thread.currentThread();
+        // an offer between the swap of tail and the link of next is not lost: it unparks us once linked
+        if (NEXT.getVolatile(head) == null) LockSupport.park(this);
+        waitingConsumer = null;
+    }
+
+    void wake() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+}
@@ -0,0 +1,71 @@
+package it.matteopierro.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailboxTest {
+
+    @Test
+    void deliverInOfferOrder() {
+        Mailbox mailbox = new Mailbox();
+        mailbox.offer(new Packet(1, 2));
+        mailbox.offer(new Packet(3, 4));
+
+        assertThat(mailbox.poll().x()).isEqualTo(1L);
+        assertThat(mailbox.poll().y()).isEqualTo(4L);
+        assertThat(mailbox.poll()).isNull();
+        assertThat(mailbox.isEmpty()).isTrue();
+    }
+
+    @Test
+    void drainEveryQueuedPacketInOneBatch() {
+        Mailbox mailbox = new Mailbox();
+        for (long i = 0; i < 10; i++) {
+            mailbox.offer(new Packet(i, i * i));
+        }
+        List<Long> received = new ArrayList<>();
+
+        assertThat(mailbox.drainTo(packet -> received.add(packet.y()))).isEqualTo(10);
+        assertThat(received).containsExactly(0L, 1L, 4L, 9L, 16L, 25L, 36L, 49L, 64L, 81L);
+        assertThat(mailbox.drainTo(packet -> received.add(packet.y()))).isEqualTo(0);
+    }
+
+    @Test
+    void keepTheOrderOfEachProducer() throws InterruptedException {
+        Mailbox mailbox = new Mailbox();
+        int producers = 4;
+        int packets = 100_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            long sender = producer;
+            threads.add(new Thread(() -> {
+                for (long sequence = 0; sequence < packets; sequence++) {
+                    mailbox.offer(new Packet(sender, sequence));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        long[] expected = new long[producers];
+        int received = 0;
+        while (received < producers * packets) {
+            Packet packet = mailbox.poll();
+            if (packet == null) {
+                mailbox.await();
+                continue;
+            }
+            assertThat(packet.y()).isEqualTo(expected[(int) packet.x()]++);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(expected).containsExactly(packets, packets, packets, packets);
+        assertThat(mailbox.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,57 @@
+package it.matteopierro.network;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Nat implements NatPolicy {
+    private final boolean stopOnFirstPacket;
+    private final AtomicReference<Packet> first = new AtomicReference<>();
+    private final AtomicReference<Packet> last = new AtomicReference<>();
+    // only touched by onIdle, which the switch never runs concurrently
+    private Packet lastDelivered;
+    private volatile Packet repeated;
+
+    public Nat() {
+        this(false);
+    }
+
+    private Nat(boolean stopOnFirstPacket) {
+        this.stopOnFirstPacket = stopOnFirstPacket;
+    }
+
+    public static Nat stopOnFirstPacket() {
+        return new Nat(true);
+    }
+
+    @Override
+    public void receive(PacketSwitch network, long x, long y) {
+        Packet packet = new Packet(x, y);
+        last.set(packet);
+        if (first.compareAndSet(null, packet) && stopOnFirstPacket) network.stop();
+    }
+
+    @Override
+    public void onIdle(PacketSwitch network) {
+        Packet packet = last.get();
+        if (packet == null) return;
+        if (lastDelivered != null && lastDelivered.y() == packet.y()) {
+            repeated = packet;
+            network.stop();
+            return;
+        }
+        lastDelivered = packet;
+        network.send(0, packet.x(), packet.y());
+    }
+
+    public long firstY() {
+        return received(first.get()).y();
+    }
+
+    public long repeatedY() {
+        return received(repeated).y();
+    }
+
+    private static Packet received(Packet packet) {
+        if (packet == null) throw new IllegalStateException("The NAT has not seen such a packet yet");
+        return packet;
+    }
+}
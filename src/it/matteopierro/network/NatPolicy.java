@@ -0,0 +1,7 @@
+package it.matteopierro.network;
+
+public interface NatPolicy {
+    void receive(PacketSwitch network, long x, long y);
+
+    void onIdle(PacketSwitch network);
+}
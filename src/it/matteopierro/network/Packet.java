@@ -0,0 +1,26 @@
+package it.matteopierro.network;
+
+public final class Packet {
+    private final long x;
+    private final long y;
+    // link used by the mailbox the packet is queued in; a packet is delivered at most once
+    volatile Packet next;
+
+    public Packet(long x, long y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public long x() {
+        return x;
+    }
+
+    public long y() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return "Packet{x=" + x + ", y=" + y + '}';
+    }
+}
@@ -0,0 +1,191 @@
+package it.matteopierro.network;
+
+import it.matteopierro.computer.Machine;
+import it.matteopierro.computer.ProgramImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+public class PacketSwitch {
+    public static final long NAT_ADDRESS = 255;
+    public static final long NO_PACKET = -1;
+
+    private static final ExecutorService THREADS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "nic");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Interface[] interfaces;
+    private final NatPolicy nat;
+    // busy interfaces plus packets queued in mailboxes: the network is idle exactly when it drops to zero
+    private final AtomicLong activity;
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean stopped = false;
+
+    public PacketSwitch(ProgramImage image, int size, NatPolicy nat) {
+        this.interfaces = new Interface[size];
+        for (int address = 0; address < size; address++) {
+            interfaces[address] = new Interface(address, image.newMachine());
+        }
+        this.nat = nat;
+        this.activity = new AtomicLong(size);
+    }
+
+    public void run() {
+        List<Future<?>> running = new ArrayList<>();
+        for (Interface nic : interfaces) {
+            running.add(THREADS.submit(nic));
+        }
+        try {
+            for (Future<?> nic : running) {
+                nic.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            stop();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void send(long address, long x, long y) {
+        if (address == NAT_ADDRESS) {
+            nat.receive(this, x, y);
+        } else if (address >= 0 && address < interfaces.length && !interfaces[(int) address].halted) {
+            Interface nic = interfaces[(int) address];
+            activity.incrementAndGet();
+            queued.increment();
+            nic.mailbox.offer(new Packet(x, y));
+            // the NIC halted after the check above: it may already have discarded its mailbox
+            if (nic.halted) nic.discardMailbox();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        for (Interface nic : interfaces) {
+            nic.mailbox.wake();
+        }
+    }
+
+    public boolean isIdle() {
+        return activity.get() == 0;
+    }
+
+    public int size() {
+        return interfaces.length;
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private void deactivate(long count) {
+        if (activity.addAndGet(-count) != 0) return;
+        // nothing else can queue a packet while the network is idle, only the NAT
+        long before = queued.sum();
+        nat.onIdle(this);
+        if (queued.sum() == before) stop();
+    }
+
+    private final class Interface implements Runnable {
+        private final int address;
+        private final Machine machine;
+        private final Mailbox mailbox = new Mailbox();
+        private final Consumer<Packet> receive;
+        private final long[] outgoing = new long[3];
+        private int outgoingSize = 0;
+        // -1 was handed out and the NIC has not sent anything since
+        private boolean pollPending = false;
+        private boolean idle = false;
+        private volatile boolean halted = false;
+
+        private Interface(int address, Machine machine) {
+            this.address = address;
+            this.machine = machine;
+            this.receive = packet -> {
+                machine.addInput(packet.x());
+                machine.addInput(packet.y());
+            };
+        }
+
+        @Override
+        public void run() {
+            try {
+                machine.addInput(address);
+                while (!stopped) {
+                    switch (machine.run()) {
+                        case NEEDS_INPUT:
+                            receive();
+                            break;
+                        case OUTPUT:
+                            transmit(machine.output());
+                            break;
+                        default:
+                            halt();
+                            return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                stop();
+                throw e;
+            }
+        }
+
+        // a NIC is only idle once it used up its -1 and asks again with nothing to read, like the Scheduler
+        private void receive() {
+            int received = mailbox.drainTo(receive);
+            if (received > 0) {
+                // waking up and consuming the batch is a single update of the activity counter
+                activity.addAndGet(idle ? 1 - received : -received);
+                idle = false;
+                pollPending = false;
+                delivered.add(received);
+            } else if (idle) {
+                mailbox.await();
+            } else if (pollPending) {
+                idle = true;
+                deactivate(1);
+            } else {
+                pollPending = true;
+                machine.addInput(NO_PACKET);
+            }
+        }
+
+        private void transmit(long value) {
+            pollPending = false;
+            outgoing[outgoingSize++] = value;
+            if (outgoingSize < outgoing.length) return;
+            outgoingSize = 0;
+            send(outgoing[0], outgoing[1], outgoing[2]);
+        }
+
+        private void halt() {
+            halted = true;
+            discardMailbox();
+            if (!idle) deactivate(1);
+        }
+
+        // both the halted NIC and late senders drain here, so the single-consumer mailbox needs the lock
+        private synchronized void discardMailbox() {
+            int discarded = mailbox.drainTo(packet -> { });
+            if (discarded == 0) return;
+            dropped.add(discarded);
+            deactivate(discarded);
+        }
+    }
+}
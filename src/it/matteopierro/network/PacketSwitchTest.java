@@ -0,0 +1,121 @@
+package it.matteopierro.network;
+
+import it.matteopierro.computer.ProgramImage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PacketSwitchTest {
+
+    @Test
+    void stopOnTheFirstPacketSentToTheNat() throws IOException {
+        Nat nat = Nat.stopOnFirstPacket();
+        PacketSwitch network = new PacketSwitch(ProgramImage.load(Paths.get("./input_day23")), 50, nat);
+
+        network.run();
+
+        assertThat(nat.firstY()).isEqualTo(26163L);
+        assertThat(network.dropped()).isEqualTo(0L);
+    }
+
+    @Test
+    void wakeTheNetworkUpWhenItIsIdle() throws IOException {
+        Nat nat = new Nat();
+        PacketSwitch network = new PacketSwitch(ProgramImage.load(Paths.get("./input_day23")), 50, nat);
+
+        network.run();
+
+        assertThat(nat.firstY()).isEqualTo(26163L);
+        assertThat(nat.repeatedY()).isEqualTo(18733L);
+        assertThat(network.delivered()).isPositive();
+    }
+
+    @Test
+    void callTheNatPolicyOnlyWhenNothingIsInFlight() throws IOException {
+        int[] idles = new int[1];
+        boolean[] alwaysIdle = {true};
+        NatPolicy countIdles = new NatPolicy() {
+            private final Nat nat = new Nat();
+
+            @Override
+            public void receive(PacketSwitch network, long x, long y) {
+                nat.receive(network, x, y);
+            }
+
+            @Override
+            public void onIdle(PacketSwitch network) {
+                alwaysIdle[0] &= network.isIdle();
+                if (++idles[0] == 3) {
+                    network.stop();
+                } else {
+                    nat.onIdle(network);
+                }
+            }
+        };
+        PacketSwitch network = new PacketSwitch(ProgramImage.load(Paths.get("./input_day23")), 50, countIdles);
+
+        network.run();
+
+        assertThat(idles[0]).isEqualTo(3);
+        assertThat(alwaysIdle[0]).isTrue();
+    }
+
+    @Test
+    void waitForANicToUseItsEmptyReadBeforeCallingItIdle() {
+        // reads its address and a -1, sends 7,8 to the NAT, then keeps reading
+        ProgramImage sendAfterEmptyRead = ProgramImage.parse("3,100,3,101,104,255,104,7,104,8,3,101,1105,1,10");
+        List<Long> receivedBeforeIdle = new ArrayList<>();
+        List<Long> received = new ArrayList<>();
+        NatPolicy recordOrder = new NatPolicy() {
+            @Override
+            public void receive(PacketSwitch network, long x, long y) {
+                received.add(y);
+            }
+
+            @Override
+            public void onIdle(PacketSwitch network) {
+                receivedBeforeIdle.addAll(received);
+                network.stop();
+            }
+        };
+        PacketSwitch network = new PacketSwitch(sendAfterEmptyRead, 1, recordOrder);
+
+        network.run();
+
+        assertThat(receivedBeforeIdle).containsExactly(8L);
+    }
+
+    @Test
+    void stopWhenTheNatHasNothingToWakeTheNetworkWith() throws InterruptedException {
+        // reads its address, then only ever reads
+        PacketSwitch network = new PacketSwitch(ProgramImage.parse("3,100,3,101,1105,1,2"), 2, new Nat());
+
+        assertThat(runsToTheEnd(network)).isTrue();
+        assertThat(network.isIdle()).isTrue();
+    }
+
+    @Test
+    void dropThePacketsQueuedForAHaltedNic() throws InterruptedException {
+        // NIC 0 sends 7,8 to NIC 1 and keeps reading, NIC 1 counts to a million and halts without reading
+        ProgramImage program = ProgramImage.parse("3,100,1006,100,20,1001,101,1,101,1007,101,1000000,102,1005,102,5,99,0,0,0,"
+                + "104,1,104,7,104,8,3,103,1105,1,26");
+        PacketSwitch network = new PacketSwitch(program, 2, new Nat());
+
+        assertThat(runsToTheEnd(network)).isTrue();
+        assertThat(network.dropped()).isEqualTo(1L);
+        assertThat(network.delivered()).isEqualTo(0L);
+    }
+
+    private static boolean runsToTheEnd(PacketSwitch network) throws InterruptedException {
+        Thread running = new Thread(network::run);
+        running.setDaemon(true);
+        running.start();
+        running.join(5_000);
+        return !running.isAlive();
+    }
+}